@@ -0,0 +1,219 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Streaming translator between local LF line endings and the CRLF line endings of TYPE A transfers.
+ * Bytes are translated between two buffers owned by the transcoder, a run of bytes at a time,
+ * so a transfer allocates nothing no matter how many lines it holds.
+ * Sent files are read and written through pooled direct buffers, as binary copies are,
+ * and LFs are searched for eight bytes at a time rather than one.
+ * Line endings which are already CRLF are left as they are, and a CR split from its LF
+ * by the end of a buffer is carried over to the next one.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class AsciiTranscoder {
+
+
+    // Private constants
+    private static final int BUFFER = 64 * 1024;
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final VarHandle WORDS = MethodHandles.byteArrayViewVarHandle( long[].class, ByteOrder.LITTLE_ENDIAN );
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+    private static final long LFS = ONES * LF;
+
+    // Private global variables
+    private byte[] input = new byte[BUFFER];
+    private byte[] output = new byte[2 * BUFFER];
+    private boolean lastWasCR = false;
+
+
+    /* Public Functions */
+
+
+    /**
+     * Sends the given range of a local file with every bare LF translated to CRLF.
+     *
+     * @param file      File to send
+     * @param position  Offset of the first byte to send
+     * @param end       Offset after the last byte to send, capped at the end of the file
+     * @param target    Channel to send the translated bytes to
+     * @param buffers   Pool to lease the read and written buffers from
+     * @param bandwidth Bandwidth limit to charge the sent bytes to, or null for none
+     * @return Number of bytes written to the target
+     * @throws IOException If failed to read the file or write to the target
+     */
+    public long send( FileChannel file, long position, long end, WritableByteChannel target, BufferPool buffers,
+                      TokenBucket bandwidth ) throws IOException {
+        lastWasCR = false;
+        ByteBuffer read = buffers.acquire( BUFFER );
+        ByteBuffer translated = buffers.acquire( 2 * BUFFER );
+        long sent = 0;
+
+        try {
+            while ( position < end ) {
+                read.clear().limit( (int) Math.min( BUFFER, end - position ) );
+                int readBytes = file.read( read, position );
+                if ( readBytes == -1 )
+                    break;
+                position += readBytes;
+
+                read.get( 0, input, 0, readBytes );
+                int length = toNetwork( input, 0, readBytes, output, 0 );
+                translated.clear().put( 0, output, 0, length ).limit( length );
+                while ( translated.hasRemaining() )
+                    target.write( translated );
+
+                sent += length;
+                if ( bandwidth != null )
+                    bandwidth.acquire( length );
+            }
+        } finally {
+            buffers.release( read );
+            buffers.release( translated );
+        }
+
+        return sent;
+    }
+
+    /**
+     * Copies a received TYPE A stream to a local file with every CRLF translated to LF.
+     *
+     * @param source Stream of received bytes, read until it ends
+     * @param target Stream to write the translated bytes to
+     * @return Number of bytes written to the target
+     * @throws IOException If failed to read from the source or write to the target
+     */
+    public long receive( InputStream source, OutputStream target ) throws IOException {
+        lastWasCR = false;
+        long written = 0;
+
+        int readBytes;
+        while ( (readBytes = source.read( input, 0, input.length )) != -1 ) {
+            int length = toLocal( input, 0, readBytes, output, 0 );
+            target.write( output, 0, length );
+            written += length;
+        }
+
+        // A CR at the very end of the stream was not part of a line ending
+        if ( lastWasCR ) {
+            target.write( CR );
+            ++written;
+        }
+
+        return written;
+    }
+
+    /**
+     * Translates bare LFs to CRLF.
+     * The output must have room for twice the input.
+     *
+     * @param in     Bytes to translate
+     * @param from   Index of the first byte to translate
+     * @param to     Index after the last byte to translate
+     * @param out    Array to write the translated bytes to
+     * @param offset Index of the output to start writing at
+     * @return Index after the last written byte
+     */
+    public int toNetwork( byte[] in, int from, int to, byte[] out, int offset ) {
+        int start = from;
+
+        for ( int i = nextLF( in, from, to ); i < to; i = nextLF( in, i + 1, to ) ) {
+            if ( i > from ? in[i - 1] == CR : lastWasCR )
+                continue;
+
+            // Copy the run up to the LF, the LF itself starts the next run
+            System.arraycopy( in, start, out, offset, i - start );
+            offset += i - start;
+            out[offset++] = CR;
+            start = i;
+        }
+
+        System.arraycopy( in, start, out, offset, to - start );
+        if ( to > from )
+            lastWasCR = in[to - 1] == CR;
+        return offset + to - start;
+    }
+
+    /**
+     * Translates CRLFs to LF, leaving every other CR in place.
+     * The output must have room for the input plus one byte.
+     *
+     * @param in     Bytes to translate
+     * @param from   Index of the first byte to translate
+     * @param to     Index after the last byte to translate
+     * @param out    Array to write the translated bytes to
+     * @param offset Index of the output to start writing at
+     * @return Index after the last written byte
+     */
+    public int toLocal( byte[] in, int from, int to, byte[] out, int offset ) {
+        if ( from == to )
+            return offset;
+
+        // Settle a CR held back from the end of the previous input
+        if ( lastWasCR && in[from] != LF )
+            out[offset++] = CR;
+        lastWasCR = false;
+
+        int start = from;
+        for ( int i = from; i < to; ++i ) {
+            if ( in[i] != CR )
+                continue;
+
+            // Copy the run up to the CR, then drop the CR if an LF follows it
+            System.arraycopy( in, start, out, offset, i - start );
+            offset += i - start;
+            start = i + 1;
+
+            if ( i + 1 == to )
+                lastWasCR = true;
+            else if ( in[i + 1] != LF )
+                out[offset++] = CR;
+        }
+
+        System.arraycopy( in, start, out, offset, to - start );
+        return offset + to - start;
+    }
+
+
+    /* Private Functions */
+
+
+    /**
+     * Find the next LF, eight bytes at a time.
+     * Bytes which equal LF become zero when xored with a word of LFs, and subtracting one from every byte
+     * then sets the high bit of the lowest zero byte. Bytes above it may match falsely, so only the lowest match,
+     * the first in little endian order, is used.
+     *
+     * @param in    Bytes to search
+     * @param from  Index to start searching at
+     * @param limit Index to stop searching at
+     * @return Index of the next LF, or limit if there is none
+     */
+    private static int nextLF( byte[] in, int from, int limit ) {
+        int i = from;
+        for ( ; i + Long.BYTES <= limit; i += Long.BYTES ) {
+            long word = (long) WORDS.get( in, i ) ^ LFS;
+            long matches = (word - ONES) & ~word & HIGHS;
+            if ( matches != 0 )
+                return i + Long.numberOfTrailingZeros( matches ) / Byte.SIZE;
+        }
+
+        for ( ; i < limit; ++i )
+            if ( in[i] == LF )
+                return i;
+
+        return limit;
+    }
+
+}
@@ -0,0 +1,255 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of the attributes of regular files, used to answer SIZE and MDTM, keyed by the real path of their directory.
+ * The first lookup in a directory reads the attributes of every entry in one pass over the directory,
+ * so clients checking a whole tree for changes cost one directory read per directory instead of a stat per file.
+ * Entries are dropped as soon as the DirectoryWatcher reports a change in their directory.
+ * The cache is bounded by the total number of file entries it holds, least recently used directories are dropped first.
+ * Directories too large to cache are answered with a stat of the requested file on every lookup.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class AttributeCache implements DirectoryWatcher.Listener {
+
+
+    // Private constants
+    private static final int MAX_DIRECTORY = 65536;
+    private static final Map<String, BasicFileAttributes> TOO_LARGE = new HashMap<>();
+
+    // Private global variables
+    private Storage storage;
+    private DirectoryWatcher watcher;
+    private int maxEntries;
+    private int maxDirectory;
+    private int size = 0;
+    private Map<Path, Map<String, BasicFileAttributes>> directories = new LinkedHashMap<>( 16, 0.75f, true );
+    private AtomicLong generation = new AtomicLong();
+    private LongAdder hits = new LongAdder();
+    private LongAdder misses = new LongAdder();
+
+
+    /* Public Functions */
+
+
+    /**
+     * Constructor for the AttributeCache class.
+     *
+     * @param storage        Storage the attributes are read from
+     * @param watcher        Watcher reporting directory changes, or null to disable caching
+     * @param maxEntries     Maximum number of file entries to keep across all directories,
+     *                       a directory counts as at least one entry
+     */
+    public AttributeCache( Storage storage, DirectoryWatcher watcher, int maxEntries ) {
+        this.storage = storage;
+        this.watcher = watcher;
+        this.maxEntries = maxEntries;
+        maxDirectory = Math.min( MAX_DIRECTORY, maxEntries );
+
+        if ( watcher != null )
+            watcher.addListener( this );
+    }
+
+    /**
+     * Gets the attributes of a regular file.
+     *
+     * @param file Path of the file
+     * @return Attributes of the file
+     * @throws FileNotFoundException If the path is not a regular file
+     * @throws IOException           If failed to read the file's directory
+     */
+    public BasicFileAttributes get( Path file ) throws IOException {
+        Path parent = file.getParent();
+        Path name = file.getFileName();
+        if ( parent == null || name == null )
+            throw new FileNotFoundException( file.toString() );
+
+        Path key = storage.toRealPath( parent );
+        Map<String, BasicFileAttributes> entries;
+        synchronized ( directories ) {
+            entries = directories.get( key );
+        }
+
+        if ( entries != null )
+            hits.increment();
+        else {
+            misses.increment();
+            entries = load( key );
+        }
+
+        BasicFileAttributes attributes = entries != null && entries != TOO_LARGE ? entries.get( name.toString() )
+                : storage.readAttributes( file );
+        if ( attributes == null || !attributes.isRegularFile() )
+            throw new FileNotFoundException( file.toString() );
+
+        return attributes;
+    }
+
+    /**
+     * Drops the cached attributes of the directory of a file the server itself just changed.
+     *
+     * @param file Path of the changed file
+     */
+    public void invalidate( Path file ) {
+        Path parent = file.getParent();
+        if ( parent == null ) return;
+
+        try {
+            changed( storage.toRealPath( parent ), file );
+        } catch ( IOException e ) {
+        }
+    }
+
+    /**
+     * Drops the cached attributes of a changed directory.
+     *
+     * @param directory Directory which changed
+     * @param entry     Entry of the directory which changed, or null if any entry may have changed
+     */
+    @Override
+    public void changed( Path directory, Path entry ) {
+        synchronized ( directories ) {
+            generation.incrementAndGet();
+            Map<String, BasicFileAttributes> entries = directories.remove( directory );
+            if ( entries != null ) {
+                size -= weight( entries );
+                watcher.unwatch( directory );
+            }
+        }
+    }
+
+    /**
+     * Gets the number of entries held, counted against the cache's limit.
+     *
+     * @return Number of cached entries
+     */
+    public int getSize() {
+        synchronized ( directories ) {
+            return size;
+        }
+    }
+
+    /**
+     * Gets the number of lookups answered from the cache.
+     *
+     * @return Number of cache hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of lookups which had to read their directory.
+     *
+     * @return Number of cache misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+
+    /* Private Functions */
+
+
+    /**
+     * Read the attributes of every regular file in a directory and cache them.
+     *
+     * @param directory Real path of the directory
+     * @return Attributes of the directory's regular files by name, TOO_LARGE if the directory has too many entries
+     *         to cache, or null if the directory is not watched
+     * @throws IOException If failed to read the directory
+     */
+    private Map<String, BasicFileAttributes> load( Path directory ) throws IOException {
+        // Only cache directories whose changes will be reported
+        long stamp = generation.get();
+        if ( watcher == null || !watcher.watch( directory ) )
+            return null;
+
+        // A cached directory keeps the reference to its watch until it is dropped
+        boolean cached = false;
+        try {
+            Map<String, BasicFileAttributes> entries = read( directory );
+
+            synchronized ( directories ) {
+                // Skip the update if the directory may have changed while it was read
+                if ( generation.get() == stamp ) {
+                    Map<String, BasicFileAttributes> replaced = directories.put( directory, entries );
+                    size += weight( entries ) - (replaced == null ? 0 : weight( replaced ));
+                    cached = replaced == null;
+
+                    // Drop the least recently used directories until the entries fit, keeping the one just read
+                    Iterator<Map.Entry<Path, Map<String, BasicFileAttributes>>> eldest =
+                            directories.entrySet().iterator();
+                    while ( size > maxEntries && directories.size() > 1 ) {
+                        Map.Entry<Path, Map<String, BasicFileAttributes>> dropped = eldest.next();
+                        size -= weight( dropped.getValue() );
+                        eldest.remove();
+                        watcher.unwatch( dropped.getKey() );
+                    }
+                }
+            }
+
+            return entries;
+        } finally {
+            if ( !cached )
+                watcher.unwatch( directory );
+        }
+    }
+
+    /**
+     * Read the attributes of every regular file in a directory.
+     *
+     * @param directory Real path of the directory
+     * @return Attributes of the directory's regular files by name, or TOO_LARGE if the directory has too many
+     *         entries to cache
+     * @throws IOException If failed to read the directory
+     */
+    private Map<String, BasicFileAttributes> read( Path directory ) throws IOException {
+        Map<String, BasicFileAttributes> entries = new HashMap<>();
+        int count = 0;
+        try ( DirectoryStream<Path> stream = storage.newDirectoryStream( directory ) ) {
+            for ( Path entry : stream ) {
+                // Remember the directory is too large, so it is not read again until it changes
+                if ( ++count > maxDirectory ) {
+                    entries = TOO_LARGE;
+                    break;
+                }
+
+                // Entries deleted while the directory is read are left out
+                try {
+                    BasicFileAttributes attributes = storage.readAttributes( entry );
+                    if ( attributes.isRegularFile() )
+                        entries.put( entry.getFileName().toString(), attributes );
+                } catch ( IOException e ) {
+                }
+            }
+        } catch ( DirectoryIteratorException e ) {
+            throw e.getCause();
+        }
+
+        return entries;
+    }
+
+    /**
+     * Get the number of entries a cached directory counts against the cache's limit.
+     *
+     * @param entries Cached attributes of the directory
+     * @return Number of file entries, at least 1
+     */
+    private static int weight( Map<String, BasicFileAttributes> entries ) {
+        return Math.max( 1, entries.size() );
+    }
+
+}
@@ -0,0 +1,282 @@
+import java.lang.ref.Cleaner;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool of direct ByteBuffers shared by every transfer, leased for one transfer and released afterwards.
+ * Buffers come in power of two size classes from 4 KB to 1 MB, each class keeping a bounded stack of free buffers,
+ * so once the pool is warm a transfer allocates nothing and the garbage collector never sees transfer buffers.
+ * Larger requests are allocated on demand and never pooled.
+ * In debug mode every lease is tracked without keeping its buffer reachable,
+ * and a buffer which is collected without being released is logged with the stack of the caller which leased it.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class BufferPool {
+
+
+    // Private constants
+    private static final Logger LOGGER = Logger.getLogger( BufferPool.class.getName() );
+    private static final int MIN_SHIFT = 12;
+    private static final int MAX_SHIFT = 20;
+
+    // Private global variables
+    private ByteBuffer[][] free = new ByteBuffer[MAX_SHIFT - MIN_SHIFT + 1][];
+    private int[] counts = new int[free.length];
+    private AtomicInteger leased = new AtomicInteger();
+    private LongAdder allocated = new LongAdder();
+    private LongAdder leaks = new LongAdder();
+    private Map<Integer, Lease> leases;
+    private Cleaner cleaner;
+
+
+    /* Public Functions */
+
+
+    /**
+     * Constructor for the BufferPool class.
+     *
+     * @param buffersPerClass Maximum number of free buffers to keep of each size
+     * @param debug           True to track every lease and report buffers which are never released
+     */
+    public BufferPool( int buffersPerClass, boolean debug ) {
+        for ( int i = 0; i < free.length; ++i )
+            free[i] = new ByteBuffer[Math.max( 0, buffersPerClass )];
+
+        if ( debug ) {
+            leases = new HashMap<>();
+            cleaner = Cleaner.create();
+        }
+    }
+
+    /**
+     * Leases a cleared direct buffer of at least the given capacity.
+     * The buffer must be given back with release once the caller is done with it, and not used afterwards.
+     *
+     * @param size Minimum capacity in bytes
+     * @return Leased buffer
+     */
+    public ByteBuffer acquire( int size ) {
+        int index = index( size );
+        ByteBuffer buffer = null;
+
+        if ( index < free.length ) {
+            synchronized ( free[index] ) {
+                if ( counts[index] > 0 ) {
+                    buffer = free[index][--counts[index]];
+                    free[index][counts[index]] = null;
+                }
+            }
+        }
+
+        if ( buffer == null ) {
+            allocated.increment();
+            buffer = ByteBuffer.allocateDirect( index < free.length ? 1 << (index + MIN_SHIFT) : size );
+        }
+
+        leased.incrementAndGet();
+        buffer.clear();
+        if ( leases != null )
+            track( buffer );
+
+        return buffer;
+    }
+
+    /**
+     * Returns a leased buffer to the pool.
+     *
+     * @param buffer Buffer to return, or null to do nothing
+     */
+    public void release( ByteBuffer buffer ) {
+        if ( buffer == null ) return;
+
+        if ( leases != null ) {
+            Lease lease = untrack( buffer );
+            if ( lease == null ) {
+                LOGGER.log( Level.WARNING, "Released a buffer which is not leased", new Throwable() );
+                return;
+            }
+
+            lease.released = true;
+            lease.cleanable.clean();
+        }
+
+        leased.decrementAndGet();
+        recycle( buffer );
+    }
+
+    /**
+     * Gets the number of buffers currently leased.
+     *
+     * @return Number of leased buffers
+     */
+    public int getLeased() {
+        return leased.get();
+    }
+
+    /**
+     * Gets the number of buffers the pool had to allocate because none of the wanted size was free.
+     *
+     * @return Number of allocated buffers
+     */
+    public long getAllocated() {
+        return allocated.sum();
+    }
+
+    /**
+     * Gets the number of leased buffers which were never released, only counted in debug mode.
+     *
+     * @return Number of leaked buffers
+     */
+    public long getLeaks() {
+        return leaks.sum();
+    }
+
+
+    /* Private Functions */
+
+
+    /**
+     * Get the size class of a buffer capacity.
+     *
+     * @param size Capacity in bytes
+     * @return Index of the smallest class holding the capacity, the number of classes if it is too large to pool
+     */
+    private static int index( int size ) {
+        if ( size <= 1 << MIN_SHIFT )
+            return 0;
+
+        int shift = 32 - Integer.numberOfLeadingZeros( size - 1 );
+        return Math.min( shift, MAX_SHIFT + 1 ) - MIN_SHIFT;
+    }
+
+    /**
+     * Push a free buffer onto its class's stack, dropping it if it is not of a class size or the stack is full.
+     *
+     * @param buffer Buffer to keep
+     */
+    private void recycle( ByteBuffer buffer ) {
+        int index = index( buffer.capacity() );
+        if ( index >= free.length || buffer.capacity() != 1 << (index + MIN_SHIFT) ) return;
+
+        synchronized ( free[index] ) {
+            if ( counts[index] < free[index].length )
+                free[index][counts[index]++] = buffer;
+        }
+    }
+
+    /**
+     * Remember where a buffer was leased, and have the Cleaner report it if it is collected before it is released.
+     * Leases are chained by the identity hash of their buffer and only hold it weakly.
+     *
+     * @param buffer Buffer being leased
+     */
+    private void track( ByteBuffer buffer ) {
+        Lease lease = new Lease( buffer, new Throwable( "Buffer leased here" ) );
+        lease.cleanable = cleaner.register( buffer, lease );
+
+        synchronized ( leases ) {
+            lease.next = leases.put( lease.hash, lease );
+        }
+    }
+
+    /**
+     * Forget the lease of a buffer being released.
+     *
+     * @param buffer Buffer being released
+     * @return Lease of the buffer, or null if it is not leased
+     */
+    private Lease untrack( ByteBuffer buffer ) {
+        synchronized ( leases ) {
+            Lease lease = leases.get( System.identityHashCode( buffer ) );
+            for ( ; lease != null; lease = lease.next ) {
+                if ( lease.buffer.get() == buffer ) {
+                    remove( lease );
+                    return lease;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Unlink a lease from its chain.
+     * Must be called while holding the lease map's lock.
+     *
+     * @param lease Lease to remove
+     */
+    private void remove( Lease lease ) {
+        Lease first = leases.get( lease.hash );
+        if ( first == lease ) {
+            if ( lease.next == null )
+                leases.remove( lease.hash );
+            else
+                leases.put( lease.hash, lease.next );
+            return;
+        }
+
+        for ( Lease previous = first; previous != null; previous = previous.next ) {
+            if ( previous.next == lease ) {
+                previous.next = lease.next;
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * A buffer leased in debug mode, run by the Cleaner once the buffer is unreachable or released.
+     */
+    private class Lease implements Runnable {
+
+
+        // Private global variables
+        private WeakReference<ByteBuffer> buffer;
+        private int hash;
+        private int capacity;
+        private Throwable origin;
+        private Cleaner.Cleanable cleanable;
+        private Lease next;
+        private volatile boolean released = false;
+
+
+        /**
+         * Constructor for the Lease class.
+         *
+         * @param buffer Buffer being leased
+         * @param origin Stack of the caller which leased the buffer
+         */
+        private Lease( ByteBuffer buffer, Throwable origin ) {
+            this.buffer = new WeakReference<>( buffer );
+            this.hash = System.identityHashCode( buffer );
+            this.capacity = buffer.capacity();
+            this.origin = origin;
+        }
+
+        /**
+         * Report the buffer as leaked, unless it was released.
+         * Its memory is freed along with it, so the pool simply allocates a new one when it runs short.
+         */
+        @Override
+        public void run() {
+            if ( released ) return;
+
+            synchronized ( leases ) {
+                remove( this );
+            }
+
+            leaks.increment();
+            leased.decrementAndGet();
+            LOGGER.log( Level.WARNING, "Buffer of " + capacity + " bytes was never released", origin );
+        }
+    }
+
+}
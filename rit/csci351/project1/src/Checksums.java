@@ -0,0 +1,305 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/**
+ * Computes the CRC32 and CRC32C checksums of files for the HASH and XCRC commands.
+ * Large files are split into chunks which are memory-mapped and checksummed in parallel,
+ * then the chunk checksums are combined into the checksum of the whole file.
+ * Results are cached by the real path, size and modification time of the file,
+ * so verifying an unchanged file again costs a single stat.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class Checksums {
+
+
+    // Public constants
+    public static final String CRC32 = "CRC32";
+    public static final String CRC32C = "CRC32C";
+
+    // Private constants
+    private static final long CHUNK = 16 * 1024 * 1024;
+    private static final int READ_BUFFER = 64 * 1024;
+    private static final int CRC32_POLYNOMIAL = 0xEDB88320;
+    private static final int CRC32C_POLYNOMIAL = 0x82F63B78;
+
+    // Private global variables
+    private Storage storage;
+    private ExecutorService workers;
+    private Map<String, Long> results;
+    private LongAdder hits = new LongAdder();
+    private LongAdder misses = new LongAdder();
+
+
+    /* Public Functions */
+
+
+    /**
+     * Constructor for the Checksums class.
+     * Starts one worker thread per processor to checksum chunks on.
+     *
+     * @param storage    Storage the files are read from
+     * @param maxEntries Maximum number of results to keep, least recently requested are dropped first
+     */
+    public Checksums( Storage storage, int maxEntries ) {
+        this.storage = storage;
+        workers = Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors(), task -> {
+            Thread thread = new Thread( task, "Checksums" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+
+        results = new LinkedHashMap<String, Long>( 16, 0.75f, true ) {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, Long> eldest ) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Gets whether the given checksum algorithm is supported.
+     *
+     * @param algorithm Name of the algorithm in upper case
+     * @return True for CRC32 and CRC32C, false otherwise
+     */
+    public static boolean isSupported( String algorithm ) {
+        return algorithm.equals( CRC32 ) || algorithm.equals( CRC32C );
+    }
+
+    /**
+     * Gets the checksum of a whole regular file, as described by attributes the caller already read.
+     * Exactly the attributes' size is checksummed, so the checksum matches the size reported with it,
+     * and a file whose size no longer matches them is not checksummed at all.
+     *
+     * @param file       Path of the file
+     * @param attributes Attributes of the file
+     * @param algorithm  CRC32 or CRC32C
+     * @return Checksum of the file's bytes
+     * @throws FileNotFoundException If the path is not a regular file
+     * @throws IOException           If failed to read the file, or it changed since its attributes were read
+     */
+    public long checksum( Path file, BasicFileAttributes attributes, String algorithm ) throws IOException {
+        if ( !attributes.isRegularFile() )
+            throw new FileNotFoundException( file.toString() );
+
+        Path real = storage.toRealPath( file );
+
+        String key = algorithm + " " + attributes.size() + " "
+                + attributes.lastModifiedTime().to( TimeUnit.NANOSECONDS ) + " " + real;
+        synchronized ( results ) {
+            Long result = results.get( key );
+            if ( result != null ) {
+                hits.increment();
+                return result;
+            }
+        }
+
+        misses.increment();
+        long result;
+        try ( FileChannel channel = storage.open( real ) ) {
+            if ( channel.size() != attributes.size() )
+                throw new IOException( "File changed since its attributes were read: " + file );
+            result = checksum( channel, attributes.size(), algorithm );
+        }
+
+        synchronized ( results ) {
+            results.put( key, result );
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the number of checksums served from the cache.
+     *
+     * @return Number of cache hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of checksums which had to read their file.
+     *
+     * @return Number of cache misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+
+    /* Private Functions */
+
+
+    /**
+     * Checksum the first bytes of a file, one chunk per worker, and combine the chunk checksums in order.
+     * Files of a single chunk are checksummed on the calling thread.
+     *
+     * @param channel   Channel of the file
+     * @param size      Number of bytes to checksum
+     * @param algorithm CRC32 or CRC32C
+     * @return Checksum of the bytes
+     * @throws IOException If failed to read the file
+     */
+    private long checksum( FileChannel channel, long size, String algorithm ) throws IOException {
+        if ( size <= CHUNK )
+            return chunk( channel, 0, size, algorithm );
+
+        List<Future<Long>> chunks = new ArrayList<>();
+        for ( long position = 0; position < size; position += CHUNK ) {
+            long first = position;
+            chunks.add( workers.submit( () -> chunk( channel, first, Math.min( CHUNK, size - first ), algorithm ) ) );
+        }
+
+        int polynomial = algorithm.equals( CRC32C ) ? CRC32C_POLYNOMIAL : CRC32_POLYNOMIAL;
+        long crc = 0;
+        try {
+            for ( int i = 0; i < chunks.size(); ++i ) {
+                long length = Math.min( CHUNK, size - i * CHUNK );
+                long chunk = chunks.get( i ).get();
+                crc = i == 0 ? chunk : combine( crc, chunk, length, polynomial );
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted while computing checksum", e );
+        } catch ( ExecutionException e ) {
+            throw new IOException( "Failed to compute checksum", e.getCause() );
+        } finally {
+            for ( Future<Long> chunk : chunks )
+                chunk.cancel( false );
+        }
+
+        return crc;
+    }
+
+    /**
+     * Checksum one chunk of a file through a read only memory mapping.
+     * Files of storage which cannot be mapped, such as files held in memory, are read through a buffer instead.
+     *
+     * @param channel   Channel of the file
+     * @param position  Offset of the chunk's first byte
+     * @param length    Number of bytes in the chunk
+     * @param algorithm CRC32 or CRC32C
+     * @return Checksum of the chunk
+     * @throws IOException If failed to map or read the file
+     */
+    private long chunk( FileChannel channel, long position, long length, String algorithm ) throws IOException {
+        Checksum checksum = algorithm.equals( CRC32C ) ? new CRC32C() : new CRC32();
+        if ( length == 0 )
+            return checksum.getValue();
+
+        if ( storage.isMappable() ) {
+            MappedByteBuffer mapped = channel.map( FileChannel.MapMode.READ_ONLY, position, length );
+            checksum.update( mapped );
+        }
+        else {
+            ByteBuffer buffer = ByteBuffer.allocate( (int) Math.min( length, READ_BUFFER ) );
+            for ( long end = position + length; position < end; buffer.clear() ) {
+                buffer.limit( (int) Math.min( buffer.capacity(), end - position ) );
+                int readBytes = channel.read( buffer, position );
+                if ( readBytes == -1 )
+                    break;
+
+                buffer.flip();
+                checksum.update( buffer );
+                position += readBytes;
+            }
+        }
+
+        return checksum.getValue();
+    }
+
+    /**
+     * Combine the CRCs of two consecutive blocks into the CRC of both, as zlib's crc32_combine does.
+     * Appending the second block's length in zeros to the first CRC is done by repeatedly squaring
+     * the operator which appends a single zero bit, so the cost is logarithmic in the length.
+     *
+     * @param crc1       CRC of the first block
+     * @param crc2       CRC of the second block
+     * @param length2    Length of the second block in bytes
+     * @param polynomial Reflected polynomial of the CRC
+     * @return CRC of the first block followed by the second
+     */
+    private static long combine( long crc1, long crc2, long length2, int polynomial ) {
+        int[] even = new int[32];
+        int[] odd = new int[32];
+
+        // Operator for one zero bit
+        odd[0] = polynomial;
+        int row = 1;
+        for ( int n = 1; n < 32; ++n ) {
+            odd[n] = row;
+            row <<= 1;
+        }
+
+        // Operators for two and four zero bits
+        square( even, odd );
+        square( odd, even );
+
+        // Apply the operator for each set bit of the length in bytes, starting from one zero byte
+        int crc = (int) crc1;
+        do {
+            square( even, odd );
+            if ( (length2 & 1) != 0 )
+                crc = times( even, crc );
+            length2 >>>= 1;
+            if ( length2 == 0 )
+                break;
+
+            square( odd, even );
+            if ( (length2 & 1) != 0 )
+                crc = times( odd, crc );
+            length2 >>>= 1;
+        } while ( length2 != 0 );
+
+        return (crc ^ (int) crc2) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Multiply a GF(2) matrix by a vector.
+     *
+     * @param matrix Matrix of 32 columns
+     * @param vector Vector to multiply
+     * @return Product of the matrix and the vector
+     */
+    private static int times( int[] matrix, int vector ) {
+        int sum = 0;
+        for ( int i = 0; vector != 0; ++i, vector >>>= 1 )
+            if ( (vector & 1) != 0 )
+                sum ^= matrix[i];
+
+        return sum;
+    }
+
+    /**
+     * Square a GF(2) matrix.
+     *
+     * @param square Matrix to write the square to
+     * @param matrix Matrix to square
+     */
+    private static void square( int[] square, int[] matrix ) {
+        for ( int n = 0; n < 32; ++n )
+            square[n] = times( matrix, matrix[n] );
+    }
+
+}
@@ -1,7 +1,22 @@
 import java.io.*;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
  * FTP proxy class for interacting with the specified FTP client.
@@ -13,6 +28,7 @@ public class ClientProxy {
 
 
     // Private constants
+    private static final int COMPRESSION_BUFFER = 64 * 1024;
     private static final String WELCOME_MESSAGE = "220 This server was created for CSCI351 at RIT.";
     private static final String SPECIFY_PASS = "331 Please specify the password.";
     private static final String LOGIN_SUCCESS = "230 Login successful.";
@@ -21,6 +37,16 @@ public class ClientProxy {
     private static final String BINARY_MODE = "200 Switching to Binary mode.";
     private static final String ASCII_MODE = "200 Switching to ASCII mode.";
     private static final String UNKNOWN_TYPE = "500 Unrecognised TYPE command.";
+    private static final String STREAM_MODE = "200 Mode set to S.";
+    private static final String DEFLATE_MODE = "200 Mode set to Z.";
+    private static final String UNKNOWN_MODE = "504 Bad MODE command.";
+    private static final String LEVEL_SET = "200 MODE Z LEVEL set to";
+    private static final String OPTION_FAIL = "501 Option not understood.";
+    private static final String HASH_ALGORITHM = "200";
+    private static final String UNKNOWN_HASH = "504 Unknown hash algorithm.";
+    private static final String FILE_HASH = "213";
+    private static final String FILE_CRC = "250";
+    private static final String HASH_FAIL = "550 Could not compute file hash.";
     private static final String DIRECTORY_FAIL = "550 Failed to change directory.";
     private static final String DIRECTORY_SUCCESS = "250 Directory successfully changed.";
     private static final String PRINT_WORKING_DIRECTORY = "257";
@@ -36,18 +62,46 @@ public class ClientProxy {
     private static final String OPEN_DATA_CONNECTION = "150 Opening BINARY mode data connection for";
     private static final String TRANSFER_PASS = "226 Transfer complete.";
     private static final String TRANSFER_FAIL = "226 Transfer failed.";
+    private static final String RESTART_ACCEPTED = "350 Restart position accepted";
+    private static final String RESTART_FAIL = "501 Bad REST parameter.";
+    private static final String RESTART_INVALID = "554 Restart position beyond end of file.";
+    private static final String RANGE_FAIL = "501 Bad RANG parameters.";
+    private static final String FILE_SIZE = "213";
+    private static final String FILE_SIZE_FAIL = "550 Could not get file size.";
+    private static final String MODIFICATION_TIME = "213";
+    private static final String MODIFICATION_TIME_FAIL = "550 Could not get file modification time.";
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern( "yyyyMMddHHmmss" )
+            .withZone( ZoneOffset.UTC );
+    private static final String FILE_CREATE_FAIL = "553 Could not create file.";
+    private static final String UPLOAD_START = "150 Ok to send data.";
+    private static final String ALLOCATE_SUCCESS = "200 ALLO command successful.";
+    private static final String ALLOCATE_FAIL = "501 Bad ALLO parameter.";
+    private static final String STATS_START = "211-Server statistics:";
+    private static final String STATS_END = "211 End of statistics.";
+    private static final String UNKNOWN_SITE = "500 Unknown SITE command.";
     private static final String QUIT = "221 Goodbye.";
     private static final String COMMAND_NOT_SUPPORTED = "200 Command not supported";
+    private static final String COMMAND_TOO_LONG = "500 Command line too long.";
     private static final String TIMEOUT = "421 Timeout.";
-    private static final String WORKING_DIRECTORY = "user.dir";
-    private static final int BUFFER = 9216;
 
     // Private global variables
-    private BufferedReader bufferedReader;
+    private CommandReader commandReader;
     private BufferedWriter bufferedWriter;
     private String ipAddress;
-    private Closeable dataConnection;
-    private boolean binaryTransfer = true;
+    private InetAddress clientAddress;
+    private ServerContext context;
+    private ListingEncoder listingEncoder;
+    private AsciiTranscoder asciiTranscoder;
+    private TokenBucket bandwidth;
+    private Deflater deflater;
+    private Inflater inflater;
+    private ByteBuffer compressionBuffer;
+    private SessionContext session = new SessionContext();
+    private boolean userAccepted = false;
+    private boolean loggedIn = false;
+    private boolean coalescing = false;
+    private int replyCode = 0;
+    private long transferredBytes = 0;
 
 
     /* Public Functions */
@@ -57,15 +111,38 @@ public class ClientProxy {
      * Constructor for the ClientProxy class.
      * Initialize the proxy's global variables.
      *
-     * @param client Command socket connected to the client
+     * @param client  Command socket connected to the client
+     * @param context Server wide configuration and resources
      * @throws IOException If failed to access client's input or output stream
      */
-    public ClientProxy( Socket client ) throws IOException {
+    public ClientProxy( Socket client, ServerContext context ) throws IOException {
+        this( new CommandReader( client.getInputStream() ),
+                new OutputStreamWriter( client.getOutputStream() ), client.getLocalAddress(), client.getInetAddress(),
+                context );
+    }
+
+    /**
+     * Constructor for the ClientProxy class.
+     * Initialize the proxy's global variables from an already established control connection.
+     * Proxies without a reader must be fed their commands through login(String) and the dispatcher.
+     *
+     * @param reader        Reader of the client's commands, or null if commands are read elsewhere
+     * @param writer        Writer of the server's responses
+     * @param localAddress  Local address of the control connection, advertised for passive transfers
+     * @param remoteAddress Address of the client, the only host allowed to connect for passive transfers
+     * @param context       Server wide configuration and resources
+     */
+    public ClientProxy( CommandReader reader, Writer writer, InetAddress localAddress, InetAddress remoteAddress,
+                        ServerContext context ) {
         // Setup streams
-        bufferedReader = new BufferedReader( new InputStreamReader( client.getInputStream() ) );
-        bufferedWriter = new BufferedWriter( new OutputStreamWriter( client.getOutputStream() ) );
+        commandReader = reader;
+        bufferedWriter = new BufferedWriter( writer );
 
-        ipAddress = client.getLocalAddress().toString().substring( 1 ).replace( '.', ',' );
+        ipAddress = localAddress.getHostAddress().replace( '.', ',' );
+        clientAddress = remoteAddress;
+        this.context = context;
+        bandwidth = context.newSessionBandwidth();
+        session.setCompressionLevel( context.getCompressionLevel() );
     }
 
     /**
@@ -81,22 +158,50 @@ public class ClientProxy {
      * Attempts to log the connected client into the FTP server.
      * Prompts the client for a username and password.
      * Accepts any anonymous sessions.
+     * While coalescing, the reply to USER is held back only if PASS was pipelined behind it,
+     * and the reply to PASS is left for the caller to flush.
      *
      * @return true if the client was successfully logged in, false otherwise
      * @throws IOException If failed to read from or write to the client
      */
     public boolean login() throws IOException {
-        String[] cmd = readCommand().split( " " );
-        if ( cmd[0].equalsIgnoreCase( "USER" ) ) {
+        CommandLine command = readCommand();
+        if ( !login( command == null ? null : command.toString() ) )
+            return false;
+
+        if ( !hasPendingCommand() )
+            flushReplies();
+        command = readCommand();
+        return login( command == null ? null : command.toString() );
+    }
+
+    /**
+     * Handles a single command of the login exchange.
+     * Expects a USER command followed by a PASS command.
+     * Accepts any anonymous sessions.
+     *
+     * @param command Command received from the client, or null if the client disconnected
+     * @return true if the login may continue or has completed, false if it failed
+     * @throws IOException If failed to write to the client
+     */
+    public boolean login( String command ) throws IOException {
+        if ( command == null ) return false;
+
+        String[] cmd = command.split( " " );
+        if ( userAccepted ) {
+            if ( cmd[0].equalsIgnoreCase( "PASS" ) ) {
+                sendResponse( LOGIN_SUCCESS );
+                loggedIn = true;
+                return true;
+            }
+            else
+                sendResponse( LOGIN_FAIL );
+        }
+        else if ( cmd[0].equalsIgnoreCase( "USER" ) ) {
             if ( cmd.length > 1 && (cmd[1].equalsIgnoreCase( "anonymous" ) || cmd[1].equalsIgnoreCase( "ftp" )) ) {
                 sendResponse( SPECIFY_PASS );
-                cmd = readCommand().split( " " );
-                if ( cmd[0].equalsIgnoreCase( "PASS" ) ) {
-                    sendResponse( LOGIN_SUCCESS );
-                    return true;
-                }
-                else
-                    sendResponse( LOGIN_FAIL );
+                userAccepted = true;
+                return true;
             }
             else
                 sendResponse( ANONYMOUS_SERVER );
@@ -107,6 +212,15 @@ public class ClientProxy {
         return false;
     }
 
+    /**
+     * Gets whether the client has completed the login exchange.
+     *
+     * @return true if the client is logged in, false otherwise
+     */
+    public boolean isLoggedIn() {
+        return loggedIn;
+    }
+
     /**
      * Sets the server's transfer mode.
      *
@@ -115,30 +229,91 @@ public class ClientProxy {
      */
     public void transferType( String type ) throws IOException {
         if ( type.equalsIgnoreCase( "I" ) ) {
-            binaryTransfer = true;
+            session.setBinaryTransfer( true );
             sendResponse( BINARY_MODE );
         }
         else if ( type.equalsIgnoreCase( "A" ) ) {
-            binaryTransfer = false;
+            session.setBinaryTransfer( false );
             sendResponse( ASCII_MODE );
         }
         else
             sendResponse( UNKNOWN_TYPE );
     }
 
+    /**
+     * Sets the server's transfer mode.
+     * MODE S sends data as is, MODE Z compresses every transfer as a zlib stream.
+     *
+     * @param mode Transfer mode
+     * @throws IOException If failed to write to the client
+     */
+    public void transferMode( String mode ) throws IOException {
+        if ( mode.equalsIgnoreCase( "S" ) ) {
+            session.setCompressedTransfer( false );
+            sendResponse( STREAM_MODE );
+        }
+        else if ( mode.equalsIgnoreCase( "Z" ) ) {
+            session.setCompressedTransfer( true );
+            sendResponse( DEFLATE_MODE );
+        }
+        else
+            sendResponse( UNKNOWN_MODE );
+    }
+
+    /**
+     * Sets an option of a command.
+     * "MODE Z LEVEL n" picks the deflate level of compressed transfers,
+     * "HASH [algorithm]" picks or reports the checksum algorithm of HASH.
+     *
+     * @param option Command and option given by the client
+     * @throws IOException If failed to write to the client
+     */
+    public void options( String option ) throws IOException {
+        String[] tokens = option.toUpperCase().split( " +" );
+
+        if ( tokens[0].equals( "HASH" ) ) {
+            if ( tokens.length > 2 || (tokens.length == 2 && !Checksums.isSupported( tokens[1] )) ) {
+                sendResponse( UNKNOWN_HASH );
+                return;
+            }
+
+            if ( tokens.length == 2 )
+                session.setHashAlgorithm( tokens[1] );
+            sendResponse( HASH_ALGORITHM + " " + session.getHashAlgorithm() );
+            return;
+        }
+
+        int level = -1;
+        if ( tokens.length == 4 && tokens[0].equals( "MODE" ) && tokens[1].equals( "Z" )
+                && tokens[2].equals( "LEVEL" ) ) {
+            try {
+                level = Integer.parseInt( tokens[3] );
+            } catch ( NumberFormatException e ) {
+                level = -1;
+            }
+        }
+
+        if ( level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION ) {
+            sendResponse( OPTION_FAIL );
+            return;
+        }
+
+        session.setCompressionLevel( level );
+        sendResponse( LEVEL_SET + " " + level + "." );
+    }
+
     /**
      * Changes the current working directory to the parent directory.
      *
      * @throws IOException If failed to write to the client
      */
     public void directoryUp() throws IOException {
-        String workingDirectory = System.getProperty( WORKING_DIRECTORY );
-        String parent = new File( workingDirectory ).getParent();
+        Path parent = session.getWorkingDirectory().getParent();
 
         if ( parent == null )
-            changeDirectory( workingDirectory );
+            changeDirectory( session.getWorkingDirectory().toString() );
         else
-            changeDirectory( parent );
+            changeDirectory( parent.toString() );
     }
 
     /**
@@ -153,14 +328,10 @@ public class ClientProxy {
             return;
         }
 
-        File file;
-        if ( path.startsWith( "/" ) )
-            file = new File( path );
-        else
-            file = new File( System.getProperty( WORKING_DIRECTORY ), path );
+        Path directory = session.resolve( path );
 
-        if ( file.exists() && file.isDirectory() && file.canRead() ) {
-            System.setProperty( WORKING_DIRECTORY, file.getCanonicalPath() );
+        if ( context.getStorage().isDirectory( directory ) && context.getStorage().isReadable( directory ) ) {
+            session.setWorkingDirectory( directory );
             sendResponse( DIRECTORY_SUCCESS );
         }
         else
@@ -173,7 +344,7 @@ public class ClientProxy {
      * @throws IOException If failed to write to the client
      */
     public void printWorkingDirectory() throws IOException {
-        sendResponse( PRINT_WORKING_DIRECTORY + " \"" + System.getProperty( WORKING_DIRECTORY ) + "\"" );
+        sendResponse( PRINT_WORKING_DIRECTORY + " \"" + session.getWorkingDirectory() + "\"" );
     }
 
     /**
@@ -183,17 +354,21 @@ public class ClientProxy {
      * @throws IOException If failed to write to the client
      */
     public void passiveDataConnection() throws IOException {
-        // Get random port
-        ServerSocket data = new ServerSocket( 0 );
+        // Lease a listening port
+        DataConnection data = DataConnection.passive( context.getPassivePorts(), clientAddress );
+        if ( data == null ) {
+            sendResponse( CONNECTION_FAIL );
+            return;
+        }
 
         // Convert port to PASV response format
-        int port = data.getLocalPort();
+        int port = data.getPort();
         int second = port % 256;
         int first = (port - second) / 256;
 
         // Tell the client which port to connect to
         sendResponse( PASSIVE_MODE + " (" + ipAddress + "," + first + "," + second + ")." );
-        dataConnection = data;
+        session.setDataConnection( data );
     }
 
     /**
@@ -221,16 +396,16 @@ public class ClientProxy {
             ip = ip + "." + connectionInfo[i];
 
         // Connect to the client
-        Socket data = new Socket();
+        DataConnection data;
         try {
-            data.connect( new InetSocketAddress( ip, port ), 3000 );
+            data = DataConnection.active( new InetSocketAddress( ip, port ) );
         } catch ( IOException e ) {
             sendResponse( CONNECTION_FAIL );
             return;
         }
 
         sendResponse( PORT_SUCCESS );
-        dataConnection = data;
+        session.setDataConnection( data );
     }
 
     /**
@@ -239,103 +414,394 @@ public class ClientProxy {
      * @throws IOException If failed to write to the client
      */
     public void directoryListing() throws IOException {
-        if ( dataConnection == null ) {
-            sendResponse( NO_DATA_CONNECTION );
-            return;
+        sendListing( session.getWorkingDirectory(), false );
+    }
+
+    /**
+     * Send a machine readable directory listing as well as success codes to the client.
+     * Each entry is described by its type, size and modification time facts.
+     *
+     * @param path Path of the directory to list, or an empty string for the working directory
+     * @throws IOException If failed to write to the client
+     */
+    public void machineListing( String path ) throws IOException {
+        sendListing( path.equals( "" ) ? session.getWorkingDirectory() : session.resolve( path ), true );
+    }
+
+    /**
+     * Sets the offset at which the next file transfer starts.
+     * Lets the client resume an interrupted download without receiving the whole file again.
+     *
+     * @param offset Byte offset given by the client
+     * @throws IOException If failed to write to the client
+     */
+    public void restart( String offset ) throws IOException {
+        long position;
+        try {
+            position = Long.parseLong( offset );
+        } catch ( NumberFormatException e ) {
+            position = -1;
         }
 
-        sendResponse( DIRECTORY_START );
+        if ( position < 0 ) {
+            sendResponse( RESTART_FAIL );
+            return;
+        }
 
-        BufferedOutputStream outputStream;
-        if ( dataConnection.getClass().getSimpleName().equalsIgnoreCase( "ServerSocket" ) )
-            outputStream = new BufferedOutputStream( ((ServerSocket) dataConnection).accept().getOutputStream() );
-        else
-            outputStream = new BufferedOutputStream( ((Socket) dataConnection).getOutputStream() );
+        session.setRestartOffset( position );
+        sendResponse( RESTART_ACCEPTED + " (" + position + ")." );
+    }
 
+    /**
+     * Limits the next file transfer to a byte range.
+     * Lets a client download segments of one file over several sessions at the same time.
+     * A range starting after its end, such as "1 0", resets to the whole file.
+     *
+     * @param start Offset of the first byte to send
+     * @param end   Offset of the last byte to send
+     * @throws IOException If failed to write to the client
+     */
+    public void range( String start, String end ) throws IOException {
+        long first, last;
         try {
-            File file = new File( System.getProperty( WORKING_DIRECTORY ) );
+            first = Long.parseLong( start );
+            last = Long.parseLong( end );
+        } catch ( NumberFormatException e ) {
+            first = last = -1;
+        }
 
-            if ( file.exists() && file.isDirectory() && file.canRead() ) {
-                String filename;
-                File[] files = file.listFiles();
-                for ( int i = 0; i < files.length; ++i ) {
-                    filename = files[i].getName();
-                    if ( files[i].isDirectory() )
-                        filename += System.getProperty( "file.separator" );
+        if ( first < 0 || last < 0 ) {
+            sendResponse( RANGE_FAIL );
+            return;
+        }
 
-                    outputStream.write( (filename + "\r\n").getBytes() );
-                }
-            }
-            else
-                throw new FileNotFoundException();
+        if ( first > last ) {
+            session.setRestartOffset( 0 );
+            sendResponse( RESTART_ACCEPTED + " (0)." );
+            return;
+        }
 
-            outputStream.flush();
-            sendResponse( DIRECTORY_SEND_PASS );
-        } catch ( Exception e ) {
-            sendResponse( DIRECTORY_SEND_FAIL );
+        session.setRange( first, last + 1 );
+        sendResponse( RESTART_ACCEPTED + " (" + first + "). End byte range at " + last + "." );
+    }
+
+    /**
+     * Sends the size of the requested file to the client.
+     * Sizes are read from the attribute cache, which reads a whole directory's attributes at once.
+     *
+     * @param filename Path of the file
+     * @throws IOException If failed to write to the client
+     */
+    public void fileSize( String filename ) throws IOException {
+        BasicFileAttributes attributes = fileAttributes( filename );
+
+        if ( attributes == null )
+            sendResponse( FILE_SIZE_FAIL );
+        else
+            sendResponse( FILE_SIZE + " " + attributes.size() );
+    }
+
+    /**
+     * Sends the last modification time of the requested file to the client, as YYYYMMDDHHMMSS in UTC.
+     * Times are read from the attribute cache, which reads a whole directory's attributes at once.
+     *
+     * @param filename Path of the file
+     * @throws IOException If failed to write to the client
+     */
+    public void modificationTime( String filename ) throws IOException {
+        BasicFileAttributes attributes = fileAttributes( filename );
+
+        if ( attributes == null )
+            sendResponse( MODIFICATION_TIME_FAIL );
+        else
+            sendResponse( MODIFICATION_TIME + " " + TIMESTAMP.format( attributes.lastModifiedTime().toInstant() ) );
+    }
+
+    /**
+     * Sends the checksum of the requested file with the session's hash algorithm,
+     * in the "213 algorithm start-end hash filename" form of the HASH command.
+     *
+     * @param filename Path of the file
+     * @throws IOException If failed to write to the client
+     */
+    public void fileHash( String filename ) throws IOException {
+        // The reported range and checksum come from one read of the file's attributes
+        String algorithm = session.getHashAlgorithm();
+        BasicFileAttributes attributes = fileAttributes( filename );
+        long checksum = fileChecksum( filename, attributes, algorithm );
+        if ( checksum < 0 ) {
+            sendResponse( HASH_FAIL );
+            return;
         }
 
-        outputStream.close();
-        dataConnection.close();
-        dataConnection = null;
+        sendResponse( FILE_HASH + " " + algorithm + " 0-" + Math.max( 0, attributes.size() - 1 ) + " "
+                + String.format( "%08x", checksum ) + " " + filename );
     }
 
     /**
-     * Reads the requested file into an input stream.
-     * Send the file's bytes as well as success codes to the client.
+     * Sends the CRC32 of the requested file, as the XCRC command does.
+     *
+     * @param filename Path of the file
+     * @throws IOException If failed to write to the client
+     */
+    public void fileCrc( String filename ) throws IOException {
+        long checksum = fileChecksum( filename, fileAttributes( filename ), Checksums.CRC32 );
+
+        if ( checksum < 0 )
+            sendResponse( HASH_FAIL );
+        else
+            sendResponse( FILE_CRC + " " + String.format( "%08X", checksum ) );
+    }
+
+    /**
+     * Send the requested file's bytes as well as success codes to the client.
+     * Starts at the offset given by a preceding REST command, if any,
+     * or sends only the byte range given by a preceding RANG command.
+     * Binary transfers are sent straight from the file to the socket without copying through the heap,
+     * ASCII transfers have their line endings translated to CRLF on the way.
+     * Both are held to the session's bandwidth limit.
      *
      * @param filename Path of the file to send to the client
      * @throws IOException If failed to write to the client
      */
     public void fileTransfer( String filename ) throws IOException {
+        long offset = session.takeRestartOffset();
+        long end = session.takeRangeEnd();
+        DataConnection dataConnection = session.getDataConnection();
         if ( dataConnection == null ) {
             sendResponse( NO_DATA_CONNECTION );
             return;
         }
         else if ( filename.equals( "" ) ) {
             sendResponse( FILE_OPEN_FAIL );
-            dataConnection = null;
+            session.setDataConnection( null );
             return;
         }
 
-        File file;
-        if ( filename.startsWith( "/" ) )
-            file = new File( filename );
-        else
-            file = new File( System.getProperty( WORKING_DIRECTORY ), filename );
+        Path path = session.resolve( filename );
 
-        if ( file.exists() && file.isFile() && file.canRead() )
-            sendResponse( OPEN_DATA_CONNECTION + " " + filename + " (" + file.length() + " bytes)." );
-        else {
+        // Files sent repeatedly share one cached handle, which is only read with positional reads
+        FileCache.Handle handle;
+        try {
+            handle = context.getFileCache().open( path );
+        } catch ( IOException e ) {
             sendResponse( FILE_OPEN_FAIL );
-            dataConnection = null;
+            session.setDataConnection( null );
             return;
         }
 
-        BufferedOutputStream outputStream;
-        if ( dataConnection.getClass().getSimpleName().equalsIgnoreCase( "ServerSocket" ) )
-            outputStream = new BufferedOutputStream( ((ServerSocket) dataConnection).accept().getOutputStream() );
-        else
-            outputStream = new BufferedOutputStream( ((Socket) dataConnection).getOutputStream() );
+        try ( handle ) {
+            long size = handle.getSize();
+            if ( offset > size ) {
+                sendResponse( RESTART_INVALID );
+                session.setDataConnection( null );
+                return;
+            }
+
+            sendResponse( OPEN_DATA_CONNECTION + " " + filename + " (" + size + " bytes)." );
+
+            SocketChannel data = openDataConnection( dataConnection );
+            if ( data == null ) return;
+
+            try {
+                FileChannel file = handle.getChannel();
+                long start = System.nanoTime();
+                WritableByteChannel target = session.isCompressedTransfer() ? compressor( data ) : data;
 
+                long sent;
+                if ( !session.isBinaryTransfer() ) {
+                    if ( asciiTranscoder == null )
+                        asciiTranscoder = new AsciiTranscoder();
+                    sent = asciiTranscoder.send( file, offset, end, target, context.getBuffers(), bandwidth );
+                }
+                else if ( context.getReadAhead() != null ) {
+                    try ( AsynchronousFileChannel reader = context.getReadAhead().open( file ) ) {
+                        sent = context.getReadAhead().send( reader, offset, end, target, bandwidth );
+                    }
+                }
+                else if ( target != data )
+                    sent = DataTransfer.copy( file, offset, end, target, context.getBuffers(), bandwidth );
+                else
+                    sent = DataTransfer.sendFile( file, offset, end, data, bandwidth );
+
+                // End the compressed stream
+                if ( target != data )
+                    target.close();
+
+                context.getMetrics().recordTransfer( sent, System.nanoTime() - start, false );
+                transferredBytes = sent;
+                sendResponse( TRANSFER_PASS );
+            } catch ( Exception e ) {
+                context.getMetrics().recordFailedTransfer();
+                sendResponse( TRANSFER_FAIL );
+            } finally {
+                releaseCompressionBuffer();
+            }
+        }
+
+        session.setDataConnection( null );
+    }
+
+    /**
+     * Reserves space for the next upload.
+     *
+     * @param size Number of bytes the client is about to upload
+     * @throws IOException If failed to write to the client
+     */
+    public void allocate( String size ) throws IOException {
+        long bytes;
         try {
-            FileInputStream fileStream = new FileInputStream( file );
-            byte[] buffer = new byte[BUFFER];
+            bytes = Long.parseLong( size );
+        } catch ( NumberFormatException e ) {
+            bytes = -1;
+        }
+
+        if ( bytes < 0 ) {
+            sendResponse( ALLOCATE_FAIL );
+            return;
+        }
 
-            int readBytes;
-            while ( (readBytes = fileStream.read( buffer )) != -1 ) {
-                outputStream.write( buffer, 0, readBytes );
+        session.setAllocation( bytes );
+        sendResponse( ALLOCATE_SUCCESS );
+    }
+
+    /**
+     * Receive a file from the client and write it to disk, as well as send success codes to the client.
+     * STOR replaces the file, or overwrites it from the offset given by a preceding REST command.
+     * APPE adds to the end of the file. Both create the file if it does not exist.
+     * If the client announced the upload's size with ALLO, the file is extended to its final size up front
+     * and trimmed to the bytes actually received afterwards.
+     *
+     * @param filename Path of the file to write
+     * @param append   True to add to the end of the file, false to replace it
+     * @throws IOException If failed to write to the client
+     */
+    public void fileUpload( String filename, boolean append ) throws IOException {
+        long offset = session.takeRestartOffset();
+        session.takeRangeEnd();
+        long allocation = session.takeAllocation();
+        DataConnection dataConnection = session.getDataConnection();
+        if ( dataConnection == null ) {
+            sendResponse( NO_DATA_CONNECTION );
+            return;
+        }
+
+        Path path = session.resolve( filename );
+        Path parent = path.getParent();
+
+        FileChannel file;
+        long size;
+        try {
+            if ( filename.equals( "" ) || context.getStorage().isReadOnly() || Files.isDirectory( path ) || parent == null
+                    || !Files.isWritable( parent ) )
+                throw new IOException( "Cannot write " + path );
+
+            file = FileChannel.open( path, StandardOpenOption.CREATE, StandardOpenOption.WRITE );
+            if ( append )
+                offset = file.size();
+            else if ( offset == 0 )
+                file.truncate( 0 );
+            size = file.size();
+        } catch ( IOException e ) {
+            sendResponse( FILE_CREATE_FAIL );
+            session.setDataConnection( null );
+            return;
+        }
+
+        if ( offset > size ) {
+            file.close();
+            sendResponse( RESTART_INVALID );
+            session.setDataConnection( null );
+            return;
+        }
+
+        try {
+            sendResponse( UPLOAD_START );
+
+            SocketChannel data = openDataConnection( dataConnection );
+            if ( data == null ) return;
+
+            AtomicLong received = new AtomicLong();
+            try {
+                long start = System.nanoTime();
+                try {
+                    // Reserve the file's final length by writing its last byte
+                    if ( allocation > 0 && offset + allocation > file.size() )
+                        file.write( ByteBuffer.wrap( new byte[1] ), offset + allocation - 1 );
+
+                    DataTransfer.receiveFile( decompressor( data ), file, offset, bandwidth, received );
+                } finally {
+                    // Trim reserved space the upload did not fill, also when it failed,
+                    // so the file's size never counts bytes which were not received
+                    long end = Math.max( offset + received.get(), size );
+                    if ( file.size() > end )
+                        file.truncate( end );
+                }
+
+                context.getMetrics().recordTransfer( received.get(), System.nanoTime() - start, true );
+                transferredBytes = received.get();
+                sendResponse( TRANSFER_PASS );
+            } catch ( Exception e ) {
+                context.getMetrics().recordFailedTransfer();
+                sendResponse( TRANSFER_FAIL );
+            } finally {
+                releaseCompressionBuffer();
             }
 
-            outputStream.flush();
-            sendResponse( TRANSFER_PASS );
-        } catch ( Exception e ) {
-            sendResponse( TRANSFER_FAIL );
+            session.setDataConnection( null );
+        } finally {
+            file.close();
+
+            // Do not wait for the watcher to report the change before the file is sent or checked again
+            context.getFileCache().invalidate( path );
+            context.getAttributeCache().invalidate( path );
         }
+    }
+
+    /**
+     * Runs a server specific SITE command.
+     * SITE STATS sends the server's command latencies, transfer rates, session and passive port counts.
+     *
+     * @param command SITE command given by the client
+     * @throws IOException If failed to write to the client
+     */
+    public void site( String command ) throws IOException {
+        if ( !command.equalsIgnoreCase( "STATS" ) ) {
+            sendResponse( UNKNOWN_SITE );
+            return;
+        }
+
+        // Send the multi-line reply as a single write
+        StringBuilder reply = new StringBuilder( STATS_START );
+        for ( String line : context.getMetrics().report() )
+            reply.append( "\r\n " ).append( line );
+        reply.append( "\r\n" ).append( STATS_END );
 
-        outputStream.close();
-        dataConnection.close();
-        dataConnection = null;
+        sendResponse( reply.toString() );
+    }
+
+    /**
+     * Gets the metrics the client's commands and transfers are recorded in.
+     *
+     * @return Server metrics
+     */
+    public ServerMetrics getMetrics() {
+        return context.getMetrics();
+    }
+
+    /**
+     * Records a handled command in the server's transfer log, if it keeps one,
+     * along with the bytes the command transferred and the code of its final reply.
+     *
+     * @param command Command received from the client
+     * @param nanos   Time taken to handle the command in nanoseconds
+     */
+    public void logCommand( CommandLine command, long nanos ) {
+        TransferLog transferLog = context.getTransferLog();
+        if ( transferLog != null )
+            transferLog.record( session.getId(), command.toString(), transferredBytes, nanos, replyCode );
+
+        transferredBytes = 0;
     }
 
     /**
@@ -345,6 +811,7 @@ public class ClientProxy {
      */
     public void quit() throws IOException {
         sendResponse( QUIT );
+        flushReplies();
     }
 
     /**
@@ -356,6 +823,15 @@ public class ClientProxy {
         sendResponse( COMMAND_NOT_SUPPORTED );
     }
 
+    /**
+     * Notifies the client of a received command line which is too long to be read.
+     *
+     * @throws IOException If failed to write to the client
+     */
+    public void commandTooLong() throws IOException {
+        sendResponse( COMMAND_TOO_LONG );
+    }
+
     /**
      * Sends a server timeout message to the client.
      *
@@ -363,32 +839,227 @@ public class ClientProxy {
      */
     public void timeout() throws IOException {
         sendResponse( TIMEOUT );
+        flushReplies();
     }
 
     /**
-     * Read the global buffered input stream.
+     * Sets whether replies are held in the writer until flushReplies is called,
+     * so the replies to a batch of pipelined commands go out in a single write.
+     * Preliminary 1xx replies are always sent at once, the client waits for them before using the data connection.
      *
-     * @return Next line in the input stream
-     * @throws IOException If failed to read from the client
+     * @param coalescing True to hold replies until flushed, false to send every reply at once
      */
-    public String readCommand() throws IOException {
-        return bufferedReader.readLine();
+    public void setCoalescing( boolean coalescing ) {
+        this.coalescing = coalescing;
+    }
+
+    /**
+     * Sends every reply held back while coalescing.
+     *
+     * @throws IOException If failed to write to the client
+     */
+    public void flushReplies() throws IOException {
+        bufferedWriter.flush();
+    }
+
+    /**
+     * Gets whether another complete command has already been received, so reading it will not block.
+     *
+     * @return True if a pipelined command is waiting to be read, false otherwise
+     */
+    public boolean hasPendingCommand() {
+        return commandReader != null && commandReader.ready();
+    }
+
+    /**
+     * Releases the resources held by the client's session.
+     */
+    public void close() {
+        session.close();
+
+        // Free the native memory of the compression streams
+        if ( deflater != null )
+            deflater.end();
+        if ( inflater != null )
+            inflater.end();
+    }
+
+    /**
+     * Read the next command from the client's control connection.
+     * The returned command is reused by the reader, it is only valid until the next call.
+     * Lines too long to be read are answered and skipped.
+     *
+     * @return Next command, or null if the client closed the connection
+     * @throws IOException If failed to read from or write to the client
+     */
+    public CommandLine readCommand() throws IOException {
+        CommandLine command;
+        while ( (command = commandReader.next()) != null && command.isTooLong() ) {
+            commandTooLong();
+            if ( !hasPendingCommand() )
+                flushReplies();
+        }
+
+        return command;
     }
 
 
     /* Private Functions */
 
 
+    /**
+     * Compute the checksum of a regular file, or take it from the server's cache of checksums.
+     *
+     * @param filename   Path of the file
+     * @param attributes Attributes of the file, or null if they could not be read
+     * @param algorithm  Checksum algorithm
+     * @return Checksum of the file, or -1 if it is not a regular file, could not be read or changed since its
+     *         attributes were read
+     */
+    private long fileChecksum( String filename, BasicFileAttributes attributes, String algorithm ) {
+        if ( filename.equals( "" ) || attributes == null )
+            return -1;
+
+        try {
+            return context.getChecksums().checksum( session.resolve( filename ), attributes, algorithm );
+        } catch ( IOException e ) {
+            return -1;
+        }
+    }
+
+    /**
+     * Look up the attributes of a regular file in the attribute cache.
+     *
+     * @param filename Path of the file
+     * @return Attributes of the file, or null if it is not a regular file or could not be read
+     */
+    private BasicFileAttributes fileAttributes( String filename ) {
+        if ( filename.equals( "" ) )
+            return null;
+
+        try {
+            return context.getAttributeCache().get( session.resolve( filename ) );
+        } catch ( IOException e ) {
+            return null;
+        }
+    }
+
+    /**
+     * Stream a directory listing as well as success codes to the client.
+     *
+     * @param directory       Directory to list
+     * @param machineReadable True for MLSD facts, false for LIST names
+     * @throws IOException If failed to write to the client
+     */
+    private void sendListing( Path directory, boolean machineReadable ) throws IOException {
+        DataConnection dataConnection = session.getDataConnection();
+        if ( dataConnection == null ) {
+            sendResponse( NO_DATA_CONNECTION );
+            return;
+        }
+
+        sendResponse( DIRECTORY_START );
+
+        SocketChannel data = openDataConnection( dataConnection );
+        if ( data == null ) return;
+
+        if ( listingEncoder == null )
+            listingEncoder = new ListingEncoder( context.getStorage(), context.getBuffers() );
+
+        try {
+            // Repeated listings of an unchanged directory come straight from the cache
+            if ( session.isCompressedTransfer() ) {
+                DeflaterChannel deflating = compressor( data );
+                context.getListingCache().send( directory, machineReadable, deflating, listingEncoder );
+                deflating.close();
+            }
+            else
+                context.getListingCache().send( directory, machineReadable, data, listingEncoder );
+            sendResponse( DIRECTORY_SEND_PASS );
+        } catch ( Exception e ) {
+            sendResponse( DIRECTORY_SEND_FAIL );
+        } finally {
+            releaseCompressionBuffer();
+        }
+
+        session.setDataConnection( null );
+    }
+
+    /**
+     * Start a compressed stream on the data connection.
+     * The session's Deflater is created on first use and reused by every following transfer,
+     * the buffer is leased from the pool until the transfer releases it.
+     *
+     * @param data Data connection to write the compressed stream to
+     * @return Channel compressing everything written to it
+     */
+    private DeflaterChannel compressor( WritableByteChannel data ) {
+        if ( deflater == null )
+            deflater = new Deflater();
+
+        deflater.setLevel( session.getCompressionLevel() );
+        compressionBuffer = context.getBuffers().acquire( COMPRESSION_BUFFER );
+        return new DeflaterChannel( data, deflater, compressionBuffer );
+    }
+
+    /**
+     * Get the channel an upload is read from, decompressing it when the session is in MODE Z.
+     * The session's Inflater is created on first use and reused by every following upload,
+     * the buffer is leased from the pool until the upload releases it.
+     *
+     * @param data Data connection the client sends the upload over
+     * @return Channel of the upload's uncompressed bytes
+     */
+    private ReadableByteChannel decompressor( SocketChannel data ) {
+        if ( !session.isCompressedTransfer() )
+            return data;
+
+        if ( inflater == null )
+            inflater = new Inflater();
+
+        compressionBuffer = context.getBuffers().acquire( COMPRESSION_BUFFER );
+        return new InflaterChannel( data, inflater, compressionBuffer );
+    }
+
+    /**
+     * Return the buffer leased by the last compressed transfer to the pool.
+     */
+    private void releaseCompressionBuffer() {
+        context.getBuffers().release( compressionBuffer );
+        compressionBuffer = null;
+    }
+
+    /**
+     * Waits for the prepared data connection to be established.
+     * Notifies the client and discards the connection if it could not be opened in time.
+     *
+     * @param dataConnection Data connection prepared by PASV or PORT
+     * @return Channel connected to the client, or null if the connection failed
+     * @throws IOException If failed to write to the client
+     */
+    private SocketChannel openDataConnection( DataConnection dataConnection ) throws IOException {
+        try {
+            return dataConnection.open();
+        } catch ( IOException e ) {
+            sendResponse( CONNECTION_FAIL );
+            session.setDataConnection( null );
+            return null;
+        }
+    }
+
     /**
      * Writes a message to the global buffered output stream.
-     * Sends that message to the connected FTP client.
+     * Sends that message to the connected FTP client, unless it is held back to be coalesced with later replies.
+     * The reply's code is kept for the transfer log.
      *
      * @param response Message to send to the client
      * @throws IOException If failed to write to the client
      */
     private void sendResponse( String response ) throws IOException {
+        replyCode = (response.charAt( 0 ) - '0') * 100 + (response.charAt( 1 ) - '0') * 10 + response.charAt( 2 ) - '0';
         bufferedWriter.write( response + "\r\n" );
-        bufferedWriter.flush();
+        if ( !coalescing || response.charAt( 0 ) == '1' )
+            bufferedWriter.flush();
     }
 
 }
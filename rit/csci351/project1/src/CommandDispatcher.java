@@ -0,0 +1,159 @@
+import java.io.IOException;
+
+/**
+ * Parses commands received from a logged in FTP client and invokes the matching ClientProxy handler.
+ * Shared by every server engine so that all of them support the same command set.
+ * Handlers are found through an open addressing table keyed by the packed verb code of the command,
+ * so dispatching a command never decodes or upper cases its verb.
+ * The time taken by every command is recorded in the server's metrics and transfer log.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class CommandDispatcher {
+
+
+    // Private constants
+    private static final int TABLE_BITS = 6;
+    private static final int TABLE_MASK = (1 << TABLE_BITS) - 1;
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+    private static final int QUIT = CommandLine.code( "QUIT" );
+    private static final int[] CODES = new int[1 << TABLE_BITS];
+    private static final String[] VERBS = new String[1 << TABLE_BITS];
+    private static final Handler[] HANDLERS = new Handler[1 << TABLE_BITS];
+
+    static {
+        register( "TYPE", ( proxy, command ) -> proxy.transferType( command.argument( 0 ) ) );
+        register( "CDUP", ( proxy, command ) -> proxy.directoryUp() );
+        register( "CWD", ( proxy, command ) -> proxy.changeDirectory( command.argument( 0 ) ) );
+        register( "PWD", ( proxy, command ) -> proxy.printWorkingDirectory() );
+        register( "PASV", ( proxy, command ) -> proxy.passiveDataConnection() );
+        register( "PORT", ( proxy, command ) -> proxy.activeDataConnection( command.argument( 0 ) ) );
+        register( "LIST", ( proxy, command ) -> proxy.directoryListing() );
+        register( "MLSD", ( proxy, command ) -> proxy.machineListing( command.argument( 0 ) ) );
+        register( "REST", ( proxy, command ) -> proxy.restart( command.argument( 0 ) ) );
+        register( "RANG", ( proxy, command ) -> proxy.range( command.argument( 0 ), command.argument( 1 ) ) );
+        register( "SIZE", ( proxy, command ) -> proxy.fileSize( command.argument( 0 ) ) );
+        register( "MDTM", ( proxy, command ) -> proxy.modificationTime( command.argument( 0 ) ) );
+        register( "HASH", ( proxy, command ) -> proxy.fileHash( command.argument( 0 ) ) );
+        register( "XCRC", ( proxy, command ) -> proxy.fileCrc( command.argument( 0 ) ) );
+        register( "RETR", ( proxy, command ) -> proxy.fileTransfer( command.argument( 0 ) ) );
+        register( "STOR", ( proxy, command ) -> proxy.fileUpload( command.argument( 0 ), false ) );
+        register( "APPE", ( proxy, command ) -> proxy.fileUpload( command.argument( 0 ), true ) );
+        register( "ALLO", ( proxy, command ) -> proxy.allocate( command.argument( 0 ) ) );
+        register( "MODE", ( proxy, command ) -> proxy.transferMode( command.argument( 0 ) ) );
+        register( "OPTS", ( proxy, command ) -> proxy.options( command.rest().trim() ) );
+        register( "SITE", ( proxy, command ) -> proxy.site( command.argument( 0 ) ) );
+        register( "QUIT", ( proxy, command ) -> proxy.quit() );
+    }
+
+
+    /* Public Functions */
+
+
+    /**
+     * Run the handler of a single tokenized command from the client.
+     *
+     * @param proxy   Proxy of the client which sent the command
+     * @param command Command received from the client
+     * @return false if the client ended its session, true otherwise
+     * @throws IOException If failed to read from or write to the client
+     */
+    public static boolean dispatch( ClientProxy proxy, CommandLine command ) throws IOException {
+        long start = System.nanoTime();
+        int code = command.getVerbCode();
+        int slot = find( code );
+
+        String verb;
+        if ( slot < 0 ) {
+            // Unrecognised verbs share one histogram so clients cannot grow the metrics
+            verb = ServerMetrics.OTHER;
+            proxy.unknownCommand();
+        }
+        else {
+            verb = VERBS[slot];
+            HANDLERS[slot].handle( proxy, command );
+        }
+
+        long nanos = System.nanoTime() - start;
+        proxy.getMetrics().recordCommand( verb, nanos );
+        proxy.logCommand( command, nanos );
+        return code != QUIT;
+    }
+
+    /**
+     * Look up the name of a supported verb by its packed code.
+     *
+     * @param code Packed code of the verb
+     * @return Name of the verb, or null if it is not supported
+     */
+    public static String verb( int code ) {
+        int slot = find( code );
+        return slot < 0 ? null : VERBS[slot];
+    }
+
+
+    /* Private Functions */
+
+
+    /**
+     * Add a verb and its handler to the dispatch table.
+     *
+     * @param verb    Verb of up to four upper case letters
+     * @param handler Handler to run for the verb
+     */
+    private static void register( String verb, Handler handler ) {
+        int code = CommandLine.code( verb );
+        int slot = hash( code );
+        while ( CODES[slot] != CommandLine.UNKNOWN_VERB )
+            slot = (slot + 1) & TABLE_MASK;
+
+        CODES[slot] = code;
+        VERBS[slot] = verb;
+        HANDLERS[slot] = handler;
+    }
+
+    /**
+     * Find the slot of a verb in the dispatch table, probing past the slots of colliding verbs.
+     *
+     * @param code Packed code of the verb
+     * @return Slot of the verb, or -1 if it is not supported
+     */
+    private static int find( int code ) {
+        if ( code == CommandLine.UNKNOWN_VERB )
+            return -1;
+
+        for ( int slot = hash( code ); CODES[slot] != CommandLine.UNKNOWN_VERB; slot = (slot + 1) & TABLE_MASK )
+            if ( CODES[slot] == code )
+                return slot;
+
+        return -1;
+    }
+
+    /**
+     * Spread a packed verb code over the slots of the dispatch table with a Fibonacci hash.
+     *
+     * @param code Packed code of the verb
+     * @return Home slot of the verb
+     */
+    private static int hash( int code ) {
+        return (code * HASH_MULTIPLIER) >>> (32 - TABLE_BITS);
+    }
+
+
+    /**
+     * Handler of a single verb.
+     */
+    private interface Handler {
+
+        /**
+         * Run the command on the client's proxy.
+         *
+         * @param proxy   Proxy of the client which sent the command
+         * @param command Command received from the client
+         * @throws IOException If failed to read from or write to the client
+         */
+        void handle( ClientProxy proxy, CommandLine command ) throws IOException;
+    }
+
+}
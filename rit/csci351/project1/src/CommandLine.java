@@ -0,0 +1,156 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A single command received from a client, tokenized in place over the bytes it was read into.
+ * The verb is folded to upper case and packed into an int as it is scanned, so looking up its handler
+ * allocates nothing. Arguments are only decoded into Strings when a handler asks for them.
+ * Instances are reused for every command of a session.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class CommandLine {
+
+
+    // Public constants
+    public static final int UNKNOWN_VERB = 0;
+
+    // Private constants
+    private static final int MAX_VERB = 4;
+    private static final byte[] EMPTY = new byte[0];
+
+    // Private global variables
+    private byte[] bytes;
+    private int start;
+    private int end;
+    private int verbEnd;
+    private int verbCode;
+    private boolean tooLong = false;
+
+
+    /* Public Functions */
+
+
+    /**
+     * Points the command at a line of received bytes and scans its verb.
+     *
+     * @param bytes Bytes holding the line, which must not change while the command is in use
+     * @param start Index of the line's first byte
+     * @param end   Index after the line's last byte, excluding its line terminator
+     * @return This command
+     */
+    public CommandLine set( byte[] bytes, int start, int end ) {
+        this.bytes = bytes;
+        this.start = start;
+        this.end = end;
+        tooLong = false;
+
+        // Pack the verb's letters in upper case, anything longer than four letters or not a letter is unknown
+        int code = 0;
+        boolean valid = true;
+        int i = start;
+        for ( ; i < end && bytes[i] != ' '; ++i ) {
+            int b = bytes[i];
+            if ( b >= 'a' && b <= 'z' )
+                b -= 'a' - 'A';
+            if ( b < 'A' || b > 'Z' || i - start >= MAX_VERB )
+                valid = false;
+            code = (code << 8) | b;
+        }
+
+        verbEnd = i;
+        verbCode = valid && i > start ? code : UNKNOWN_VERB;
+        return this;
+    }
+
+    /**
+     * Marks the command as a line too long to be read, whose bytes are discarded.
+     * The command is empty and its verb is unknown.
+     *
+     * @return This command
+     */
+    public CommandLine setTooLong() {
+        set( EMPTY, 0, 0 );
+        tooLong = true;
+        return this;
+    }
+
+    /**
+     * Gets whether the command was a line too long to be read.
+     *
+     * @return True if the line was discarded, false otherwise
+     */
+    public boolean isTooLong() {
+        return tooLong;
+    }
+
+    /**
+     * Gets the packed code of the command's verb.
+     *
+     * @return Code of the verb, or UNKNOWN_VERB if it is not a verb of up to four letters
+     */
+    public int getVerbCode() {
+        return verbCode;
+    }
+
+    /**
+     * Gets an argument of the command.
+     * Arguments are separated by single spaces, so consecutive spaces give empty arguments.
+     *
+     * @param index Index of the argument, 0 for the first after the verb
+     * @return The argument, or an empty string if the command has no such argument
+     */
+    public String argument( int index ) {
+        int from = verbEnd + 1;
+        for ( ; index > 0 && from <= end; --index ) {
+            while ( from < end && bytes[from] != ' ' )
+                ++from;
+            ++from;
+        }
+
+        if ( from > end )
+            return "";
+
+        int to = from;
+        while ( to < end && bytes[to] != ' ' )
+            ++to;
+
+        return new String( bytes, from, to - from, StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * Gets everything after the verb, without the space which separates them.
+     *
+     * @return Text after the verb, or an empty string if the command has no arguments
+     */
+    public String rest() {
+        if ( verbEnd + 1 >= end )
+            return "";
+
+        return new String( bytes, verbEnd + 1, end - verbEnd - 1, StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * Gets the whole command as text.
+     *
+     * @return Command line without its line terminator
+     */
+    @Override
+    public String toString() {
+        return new String( bytes, start, end - start, StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * Packs a verb the same way received verbs are packed.
+     *
+     * @param verb Verb of up to four upper case letters
+     * @return Code of the verb
+     */
+    public static int code( String verb ) {
+        int code = 0;
+        for ( int i = 0; i < verb.length(); ++i )
+            code = (code << 8) | verb.charAt( i );
+        return code;
+    }
+
+}
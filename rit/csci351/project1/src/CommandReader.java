@@ -0,0 +1,109 @@
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reader of CRLF terminated commands from a client's control connection.
+ * Lines are split straight out of a fixed byte buffer and handed out through a reused CommandLine,
+ * so reading a command allocates nothing until its handler asks for an argument.
+ * A line which does not fit in the buffer is reported as too long once the buffer fills,
+ * and the rest of it is discarded up to its line terminator.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class CommandReader {
+
+
+    // Public constants
+    public static final int COMMAND_BUFFER = 4096;
+
+    // Private global variables
+    private InputStream input;
+    private byte[] buffer = new byte[COMMAND_BUFFER];
+    private CommandLine command = new CommandLine();
+    private int start = 0;
+    private int scanned = 0;
+    private int limit = 0;
+    private boolean discarding = false;
+
+
+    /* Public Functions */
+
+
+    /**
+     * Constructor for the CommandReader class.
+     *
+     * @param input Stream of the client's control connection
+     */
+    public CommandReader( InputStream input ) {
+        this.input = input;
+    }
+
+    /**
+     * Read the next command from the client.
+     * The returned command is reused, it is only valid until the next call.
+     *
+     * @return Next command, marked too long if it does not fit in the buffer, or null if the client closed the connection
+     * @throws IOException If failed to read from the client
+     */
+    public CommandLine next() throws IOException {
+        while ( true ) {
+            // Return the next complete line already in the buffer
+            for ( ; scanned < limit; ++scanned ) {
+                if ( buffer[scanned] == '\n' && discarding ) {
+                    discarding = false;
+                    start = scanned + 1;
+                }
+                else if ( buffer[scanned] == '\n' ) {
+                    int end = (scanned > start && buffer[scanned - 1] == '\r') ? scanned - 1 : scanned;
+                    command.set( buffer, start, end );
+                    start = ++scanned;
+                    return command;
+                }
+            }
+
+            // Move the partial line to the front to make room for the rest of it
+            if ( start > 0 ) {
+                System.arraycopy( buffer, start, buffer, 0, limit - start );
+                limit -= start;
+                scanned -= start;
+                start = 0;
+            }
+
+            // Drop a line which fills the whole buffer, reporting it when its first bytes are dropped
+            if ( limit == buffer.length ) {
+                limit = 0;
+                scanned = 0;
+                if ( !discarding ) {
+                    discarding = true;
+                    return command.setTooLong();
+                }
+            }
+
+            int readBytes = input.read( buffer, limit, buffer.length - limit );
+            if ( readBytes == -1 )
+                return null;
+            limit += readBytes;
+        }
+    }
+
+    /**
+     * Gets whether a complete command has already been received, so the next read will not block.
+     *
+     * @return True if the buffer holds a complete command, false otherwise
+     */
+    public boolean ready() {
+        // The end of a discarded line does not complete a command
+        boolean skip = discarding;
+        for ( int i = scanned; i < limit; ++i ) {
+            if ( buffer[i] == '\n' ) {
+                if ( !skip )
+                    return true;
+                skip = false;
+            }
+        }
+
+        return false;
+    }
+
+}
@@ -0,0 +1,128 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A data connection prepared by a PASV or PORT command.
+ * Passive connections wait for the client to connect to a listening port,
+ * active connections are already connected to the address given by the client.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class DataConnection implements Closeable {
+
+
+    // Private constants
+    private static final int CONNECT_TIMEOUT = 3000;
+
+    // Private global variables
+    private PassivePortPool pool;
+    private ServerSocketChannel listener;
+    private InetAddress client;
+    private SocketChannel channel;
+
+
+    /* Public Functions */
+
+
+    /**
+     * Opens a passive data connection on a port leased from the given pool.
+     * Only the given client may connect to the port.
+     *
+     * @param pool   Pool of passive ports
+     * @param client Address of the host the session's control connection comes from
+     * @return Passive data connection, or null if no port is available
+     * @throws IOException If failed to bind a listening port
+     */
+    public static DataConnection passive( PassivePortPool pool, InetAddress client ) throws IOException {
+        ServerSocketChannel listener = pool.lease();
+        if ( listener == null ) return null;
+
+        DataConnection connection = new DataConnection();
+        connection.pool = pool;
+        connection.listener = listener;
+        connection.client = client;
+        return connection;
+    }
+
+    /**
+     * Opens an active data connection to the given address.
+     *
+     * @param address Address the client is listening on
+     * @return Active data connection
+     * @throws IOException If failed to connect to the client
+     */
+    public static DataConnection active( InetSocketAddress address ) throws IOException {
+        DataConnection connection = new DataConnection();
+        connection.channel = SocketChannel.open();
+        try {
+            connection.channel.socket().connect( address, CONNECT_TIMEOUT );
+        } catch ( IOException e ) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+
+    /**
+     * Gets the port a passive connection is listening on.
+     *
+     * @return Local port number, or -1 for active connections
+     */
+    public int getPort() {
+        if ( listener == null )
+            return -1;
+
+        return listener.socket().getLocalPort();
+    }
+
+    /**
+     * Gets the connected data channel, waiting for the client to connect in passive mode.
+     *
+     * @return Blocking socket channel connected to the client
+     * @throws IOException If failed to accept the client's connection within the accept timeout
+     */
+    public SocketChannel open() throws IOException {
+        if ( channel == null )
+            channel = pool.accept( listener, client );
+
+        return channel;
+    }
+
+    /**
+     * Closes the data channel and returns any listening port to its pool.
+     */
+    @Override
+    public void close() {
+        close( channel );
+        channel = null;
+
+        if ( listener != null ) {
+            pool.release( listener );
+            listener = null;
+        }
+    }
+
+
+    /* Private Functions */
+
+
+    /**
+     * Quietly closes the given channel.
+     *
+     * @param closeable Channel to close, may be null
+     */
+    private static void close( Closeable closeable ) {
+        if ( closeable == null ) return;
+
+        try {
+            closeable.close();
+        } catch ( IOException e ) {
+        }
+    }
+
+}
@@ -0,0 +1,191 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Strategies for sending a file's bytes over a data connection and receiving uploaded files.
+ * Every strategy may be held to a bandwidth limit, which is charged one TokenBucket quantum at a time.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class DataTransfer {
+
+
+    // Private constants
+    private static final int BUFFER = 64 * 1024;
+    private static final int RECEIVE_CHUNK = 1024 * 1024;
+
+
+    /**
+     * Sends the given range of the file using FileChannel.transferTo.
+     * When the target is a socket the kernel copies the pages directly (sendfile),
+     * so the bytes never pass through a user space buffer.
+     *
+     * @param file     File to send
+     * @param position Offset of the first byte to send
+     * @param end      Offset after the last byte to send, capped at the end of the file
+     * @param target   Channel to send the bytes to
+     * @return Number of bytes sent
+     * @throws IOException If failed to read the file or write to the target
+     */
+    public static long sendFile( FileChannel file, long position, long end, WritableByteChannel target ) throws IOException {
+        return sendFile( file, position, end, target, null );
+    }
+
+    /**
+     * Sends the given range of the file using FileChannel.transferTo, no faster than the given bandwidth allows.
+     *
+     * @param file      File to send
+     * @param position  Offset of the first byte to send
+     * @param end       Offset after the last byte to send, capped at the end of the file
+     * @param target    Channel to send the bytes to
+     * @param bandwidth Bandwidth limit to charge the sent bytes to, or null for none
+     * @return Number of bytes sent
+     * @throws IOException If failed to read the file or write to the target
+     */
+    public static long sendFile( FileChannel file, long position, long end, WritableByteChannel target,
+                                 TokenBucket bandwidth ) throws IOException {
+        long start = position;
+        end = Math.min( end, file.size() );
+
+        while ( position < end ) {
+            long count = bandwidth == null ? end - position : Math.min( end - position, TokenBucket.QUANTUM );
+            long sent = file.transferTo( position, count, target );
+
+            // Stop if the file was truncated while sending
+            if ( sent == 0 && position >= (end = Math.min( end, file.size() )) )
+                break;
+
+            position += sent;
+            if ( bandwidth != null )
+                bandwidth.acquire( sent );
+        }
+
+        return position - start;
+    }
+
+    /**
+     * Sends the given range of the file through a direct buffer leased from the pool.
+     * Used for transfers which must inspect or convert the bytes on their way out.
+     *
+     * @param file     File to send
+     * @param position Offset of the first byte to send
+     * @param end      Offset after the last byte to send, capped at the end of the file
+     * @param target   Channel to send the bytes to
+     * @param buffers  Pool to lease the buffer from
+     * @return Number of bytes sent
+     * @throws IOException If failed to read the file or write to the target
+     */
+    public static long copy( FileChannel file, long position, long end, WritableByteChannel target, BufferPool buffers )
+            throws IOException {
+        return copy( file, position, end, target, buffers, null );
+    }
+
+    /**
+     * Sends the given range of the file through a direct buffer leased from the pool,
+     * no faster than the given bandwidth allows.
+     * The file is read straight into native memory and written from it, so the bytes are never copied on the heap.
+     *
+     * @param file      File to send
+     * @param position  Offset of the first byte to send
+     * @param end       Offset after the last byte to send, capped at the end of the file
+     * @param target    Channel to send the bytes to
+     * @param buffers   Pool to lease the buffer from
+     * @param bandwidth Bandwidth limit to charge the sent bytes to, or null for none
+     * @return Number of bytes sent
+     * @throws IOException If failed to read the file or write to the target
+     */
+    public static long copy( FileChannel file, long position, long end, WritableByteChannel target,
+                             BufferPool buffers, TokenBucket bandwidth ) throws IOException {
+        ByteBuffer buffer = buffers.acquire( BUFFER );
+
+        // Positional reads leave the channel's position alone, so transfers may share the channel
+        long sent = 0;
+        try {
+            int readBytes;
+            while ( sent < end - position ) {
+                buffer.clear().limit( (int) Math.min( buffer.capacity(), end - position - sent ) );
+                if ( (readBytes = file.read( buffer, position + sent )) == -1 )
+                    break;
+
+                buffer.flip();
+                while ( buffer.hasRemaining() )
+                    target.write( buffer );
+
+                sent += readBytes;
+                if ( bandwidth != null )
+                    bandwidth.acquire( readBytes );
+            }
+        } finally {
+            buffers.release( buffer );
+        }
+
+        return sent;
+    }
+
+    /**
+     * Writes everything the source sends, until it closes, into the file at the given position.
+     * Uses FileChannel.transferFrom, which reads into the JDK's cached direct buffers
+     * instead of allocating a heap buffer per transfer.
+     *
+     * @param source   Channel to receive the bytes from
+     * @param file     File to write
+     * @param position Offset in the file of the first received byte
+     * @return Number of bytes received
+     * @throws IOException If failed to read from the source or write the file
+     */
+    public static long receiveFile( ReadableByteChannel source, FileChannel file, long position ) throws IOException {
+        return receiveFile( source, file, position, null );
+    }
+
+    /**
+     * Writes everything the source sends, until it closes, into the file at the given position,
+     * no faster than the given bandwidth allows.
+     *
+     * @param source    Channel to receive the bytes from
+     * @param file      File to write
+     * @param position  Offset in the file of the first received byte
+     * @param bandwidth Bandwidth limit to charge the received bytes to, or null for none
+     * @return Number of bytes received
+     * @throws IOException If failed to read from the source or write the file
+     */
+    public static long receiveFile( ReadableByteChannel source, FileChannel file, long position, TokenBucket bandwidth )
+            throws IOException {
+        return receiveFile( source, file, position, bandwidth, new AtomicLong() );
+    }
+
+    /**
+     * Writes everything the source sends, until it closes, into the file at the given position,
+     * no faster than the given bandwidth allows.
+     * The bytes written so far are added to the progress as each chunk lands,
+     * so a caller still knows how much of the file was written when the transfer fails part way.
+     *
+     * @param source    Channel to receive the bytes from
+     * @param file      File to write
+     * @param position  Offset in the file of the first received byte
+     * @param bandwidth Bandwidth limit to charge the received bytes to, or null for none
+     * @param progress  Count of the bytes written to the file
+     * @return Number of bytes received
+     * @throws IOException If failed to read from the source or write the file
+     */
+    public static long receiveFile( ReadableByteChannel source, FileChannel file, long position, TokenBucket bandwidth,
+                                    AtomicLong progress ) throws IOException {
+        long start = position;
+        int chunk = bandwidth == null ? RECEIVE_CHUNK : TokenBucket.QUANTUM;
+
+        long received;
+        while ( (received = file.transferFrom( source, position, chunk )) > 0 ) {
+            position += received;
+            progress.addAndGet( received );
+            if ( bandwidth != null )
+                bandwidth.acquire( received );
+        }
+
+        return position - start;
+    }
+
+}
@@ -0,0 +1,133 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.Deflater;
+
+/**
+ * Channel which compresses everything written to it into a zlib stream on the target channel, as used by MODE Z.
+ * The Deflater and its output buffer are owned by the caller, so a session reuses them for every transfer
+ * instead of allocating the compressor's native state each time.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class DeflaterChannel implements WritableByteChannel {
+
+
+    // Private constants
+    private static final byte[] NO_INPUT = new byte[0];
+
+    // Private global variables
+    private WritableByteChannel target;
+    private Deflater deflater;
+    private ByteBuffer buffer;
+    private boolean open = true;
+
+
+    /* Public Functions */
+
+
+    /**
+     * Constructor for the DeflaterChannel class.
+     * Resets the deflater so it starts a new stream.
+     *
+     * @param target   Channel to write the compressed stream to, left open when this channel is closed
+     * @param deflater Deflater to compress with, set to the wanted level by the caller
+     * @param buffer   Buffer to hold compressed bytes before they are written to the target
+     */
+    public DeflaterChannel( WritableByteChannel target, Deflater deflater, ByteBuffer buffer ) {
+        this.target = target;
+        this.deflater = deflater;
+        this.buffer = buffer;
+
+        deflater.reset();
+        buffer.clear();
+    }
+
+    /**
+     * Compresses the given bytes, writing compressed output to the target as the buffer fills.
+     *
+     * @param source Bytes to compress
+     * @return Number of bytes consumed from the source
+     * @throws IOException If failed to write to the target
+     */
+    @Override
+    public int write( ByteBuffer source ) throws IOException {
+        if ( !open )
+            throw new ClosedChannelException();
+
+        int length = source.remaining();
+        deflater.setInput( source );
+        while ( !deflater.needsInput() )
+            deflate();
+
+        // The deflater keeps a reference to its input, which the caller is free to refill once this returns
+        deflater.setInput( NO_INPUT );
+        return length;
+    }
+
+    /**
+     * Ends the compressed stream and writes its remaining bytes to the target.
+     *
+     * @throws IOException If failed to write to the target
+     */
+    @Override
+    public void close() throws IOException {
+        if ( !open ) return;
+        open = false;
+
+        deflater.finish();
+        while ( !deflater.finished() )
+            deflate();
+        drain();
+    }
+
+    /**
+     * Gets whether the channel still accepts bytes.
+     *
+     * @return true until the channel is closed
+     */
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Gets the number of compressed bytes produced so far.
+     *
+     * @return Number of bytes of the compressed stream
+     */
+    public long getBytesWritten() {
+        return deflater.getBytesWritten();
+    }
+
+
+    /* Private Functions */
+
+
+    /**
+     * Run the deflater once into the buffer, writing the buffer to the target first if it is full.
+     *
+     * @throws IOException If failed to write to the target
+     */
+    private void deflate() throws IOException {
+        if ( !buffer.hasRemaining() )
+            drain();
+
+        deflater.deflate( buffer );
+    }
+
+    /**
+     * Write every buffered compressed byte to the target.
+     *
+     * @throws IOException If failed to write to the target
+     */
+    private void drain() throws IOException {
+        buffer.flip();
+        while ( buffer.hasRemaining() )
+            target.write( buffer );
+        buffer.clear();
+    }
+
+}
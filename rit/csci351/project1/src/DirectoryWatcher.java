@@ -0,0 +1,199 @@
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Watches directories for changes on a background thread and notifies the server's caches.
+ * A directory stays watched while any cache holds something from it: every successful watch must be matched
+ * by an unwatch once the cached information is dropped, and the last unwatch cancels the registration,
+ * so the kernel's watches do not grow with every directory ever visited.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class DirectoryWatcher {
+
+
+    // Private global variables
+    private WatchService watchService;
+    private Map<Path, Watch> watches = new HashMap<>();
+    private List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+
+    /* Public Functions */
+
+
+    /**
+     * Constructor for the DirectoryWatcher class.
+     * Starts the background thread which receives change events.
+     *
+     * @throws IOException If the default filesystem cannot be watched
+     */
+    public DirectoryWatcher() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+
+        Thread thread = new Thread( this::run, "DirectoryWatcher" );
+        thread.setDaemon( true );
+        thread.start();
+    }
+
+    /**
+     * Adds a listener to notify of every change in a watched directory.
+     *
+     * @param listener Listener to add
+     */
+    public void addListener( Listener listener ) {
+        listeners.add( listener );
+    }
+
+    /**
+     * Starts watching the given directory if it is not watched already, and adds a reference to its watch.
+     * Callers must only cache information about a directory while it is watched.
+     *
+     * @param directory Real path of the directory
+     * @return true if the directory is watched, false if it could not be registered
+     */
+    public boolean watch( Path directory ) {
+        synchronized ( watches ) {
+            Watch watch = watches.get( directory );
+            if ( watch == null ) {
+                try {
+                    watch = new Watch( directory.register( watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY ) );
+                } catch ( IOException | UnsupportedOperationException e ) {
+                    return false;
+                }
+                watches.put( directory, watch );
+            }
+
+            ++watch.references;
+            return true;
+        }
+    }
+
+    /**
+     * Drops a reference added by watch, cancelling the directory's watch once nothing refers to it.
+     * Directories which are no longer watched are ignored.
+     *
+     * @param directory Real path of the directory
+     */
+    public void unwatch( Path directory ) {
+        synchronized ( watches ) {
+            Watch watch = watches.get( directory );
+            if ( watch != null && --watch.references <= 0 ) {
+                watches.remove( directory );
+                watch.key.cancel();
+            }
+        }
+    }
+
+
+    /* Private Functions */
+
+
+    /**
+     * Receive change events forever and pass them to the listeners.
+     */
+    private void run() {
+        while ( true ) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch ( InterruptedException e ) {
+                return;
+            }
+
+            Path directory = (Path) key.watchable();
+            for ( WatchEvent<?> event : key.pollEvents() ) {
+                // Overflow loses the name of the changed entry, so report the whole directory
+                Path entry = null;
+                if ( event.kind() != StandardWatchEventKinds.OVERFLOW )
+                    entry = directory.resolve( (Path) event.context() );
+
+                notifyListeners( directory, entry );
+            }
+
+            // The directory was deleted or is no longer accessible, or its watch was cancelled
+            // Listeners drop the directory while its watch is still known, which releases their references
+            if ( !key.reset() && isCurrent( directory, key ) ) {
+                notifyListeners( directory, null );
+
+                synchronized ( watches ) {
+                    if ( isCurrent( directory, key ) )
+                        watches.remove( directory );
+                }
+            }
+        }
+    }
+
+    /**
+     * Check whether a key is the registration the directory is currently watched with.
+     *
+     * @param directory Watched directory
+     * @param key       Key of the directory
+     * @return True if the key belongs to the directory's current watch, false otherwise
+     */
+    private boolean isCurrent( Path directory, WatchKey key ) {
+        synchronized ( watches ) {
+            Watch watch = watches.get( directory );
+            return watch != null && watch.key == key;
+        }
+    }
+
+    /**
+     * Notify every listener of a change.
+     *
+     * @param directory Directory which changed
+     * @param entry     Entry of the directory which changed, or null if any entry may have changed
+     */
+    private void notifyListeners( Path directory, Path entry ) {
+        for ( Listener listener : listeners )
+            listener.changed( directory, entry );
+    }
+
+
+    /**
+     * Registration of a watched directory and the number of cached entries relying on it.
+     */
+    private static class Watch {
+
+
+        // Private global variables
+        private WatchKey key;
+        private int references = 0;
+
+
+        /**
+         * Constructor for the Watch class.
+         *
+         * @param key Key of the directory's registration
+         */
+        private Watch( WatchKey key ) {
+            this.key = key;
+        }
+    }
+
+
+    /**
+     * Receiver of directory change events.
+     */
+    public interface Listener {
+
+        /**
+         * Called on the watcher's thread after an entry of a watched directory changed.
+         *
+         * @param directory Directory which changed
+         * @param entry     Entry of the directory which changed, or null if any entry may have changed
+         */
+        void changed( Path directory, Path entry );
+    }
+
+}
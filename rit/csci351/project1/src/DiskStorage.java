@@ -0,0 +1,111 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Storage backed by the local filesystem, the server's default.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class DiskStorage implements Storage {
+
+
+    /* Public Functions */
+
+
+    /**
+     * Gets whether the path is a directory, following symbolic links.
+     *
+     * @param path Path to check
+     * @return True if the path is a directory, false otherwise
+     */
+    @Override
+    public boolean isDirectory( Path path ) {
+        return Files.isDirectory( path );
+    }
+
+    /**
+     * Gets whether the path exists and the server's user may read it.
+     *
+     * @param path Path to check
+     * @return True if the path can be read, false otherwise
+     */
+    @Override
+    public boolean isReadable( Path path ) {
+        return Files.isReadable( path );
+    }
+
+    /**
+     * Gets whether uploads must be refused, which they never are on disk.
+     *
+     * @return false
+     */
+    @Override
+    public boolean isReadOnly() {
+        return false;
+    }
+
+    /**
+     * Gets whether the channels of opened files can be memory mapped, which files on disk always can.
+     *
+     * @return true
+     */
+    @Override
+    public boolean isMappable() {
+        return true;
+    }
+
+    /**
+     * Resolves a path to its real path, following symbolic links.
+     *
+     * @param path Path to resolve
+     * @return Real path
+     * @throws IOException If the path does not exist
+     */
+    @Override
+    public Path toRealPath( Path path ) throws IOException {
+        return path.toRealPath();
+    }
+
+    /**
+     * Reads the attributes of a file or directory with a single stat.
+     *
+     * @param path Path of the file or directory
+     * @return Attributes of the path
+     * @throws IOException If the path does not exist or cannot be read
+     */
+    @Override
+    public BasicFileAttributes readAttributes( Path path ) throws IOException {
+        return Files.readAttributes( path, BasicFileAttributes.class );
+    }
+
+    /**
+     * Opens a directory to iterate over its entries.
+     *
+     * @param directory Path of the directory
+     * @return Stream of the directory's entries, closed by the caller
+     * @throws IOException If the directory does not exist or cannot be read
+     */
+    @Override
+    public DirectoryStream<Path> newDirectoryStream( Path directory ) throws IOException {
+        return Files.newDirectoryStream( directory );
+    }
+
+    /**
+     * Opens a file for reading.
+     *
+     * @param file Path of the file
+     * @return Channel reading the file, closed by the caller
+     * @throws IOException If the file does not exist or cannot be read
+     */
+    @Override
+    public FileChannel open( Path file ) throws IOException {
+        return FileChannel.open( file, StandardOpenOption.READ );
+    }
+
+}
@@ -14,6 +14,7 @@ public class FTP {
     private static final String UNKNOWN_COMMAND = "Unknown command. Type \"help\" for a list of supported commands.";
     private static final String EXCEPTION_MESSAGE = "Communication error. Terminating client.";
     private static final String USAGE = "Usage: java FTP <ServerName> [<PortNumber>]";
+    private static final int SEGMENTS = 4;
 
     // Private global variables
     private static Scanner scanner = new Scanner( System.in );
@@ -74,6 +75,15 @@ public class FTP {
                         proxy.changeDirectory();
                         break;
 
+                    case "compress":
+                        try {
+                            proxy.changeCompressionMode( token.length < 2 ? -1 : Integer.parseInt( token[1] ) );
+                            displayMessage( "Compression mode: " + proxy.getCompressionMode() );
+                        } catch ( NumberFormatException e ) {
+                            displayMessage( proxy.commandListing() );
+                        }
+                        break;
+
                     case "debug":
                         proxy.changeDebugMode();
                         displayMessage( "Debug mode: " + proxy.getDebugMode() );
@@ -108,6 +118,20 @@ public class FTP {
                         proxy.quit();
                         return;
 
+                    case "sget":
+                        if ( token.length < 2 )
+                            displayMessage( proxy.commandListing() );
+                        else if ( token.length == 2 )
+                            proxy.segmentedRetrieveFile( token[1], SEGMENTS );
+                        else {
+                            try {
+                                proxy.segmentedRetrieveFile( token[1], Integer.parseInt( token[2] ) );
+                            } catch ( NumberFormatException e ) {
+                                displayMessage( proxy.commandListing() );
+                            }
+                        }
+                        break;
+
                     default:
                         displayMessage( UNKNOWN_COMMAND );
                         break;
@@ -0,0 +1,665 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+/**
+ * Micro benchmarks for the FTP server's data transfer and command parsing paths.
+ * Each transfer benchmark sends over a loopback socket to a sink which discards what it reads,
+ * so the numbers reflect the cost of the server side of a transfer.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class FTPBenchmark {
+
+
+    // Private constants
+    private static final String USAGE = "Usage: java FTPBenchmark retr [<SizeInMB>] [<Runs>]\n"
+            + "       java FTPBenchmark deflate [<SizeInMB>] [<LinkMbps>] [<Level>]\n"
+            + "       java FTPBenchmark ascii [<SizeInMB>] [<Runs>]\n"
+            + "       java FTPBenchmark dispatch [<MillionsOfCommands>] [<Runs>]\n"
+            + "       java FTPBenchmark readahead [<SizeInMB>] [<LatencyMs>] [<Depth>] [<LinkMbps>]";
+    private static final int MEGABYTE = 1024 * 1024;
+    private static final int SINK_BUFFER = 256 * 1024;
+    private static final int DEFLATE_RUNS = 2;
+    private static final int READ_AHEAD_RUNS = 2;
+    private static final String[] COMMANDS = {"TYPE I", "PASV", "RETR data/file042.bin", "REST 1048576",
+            "SIZE data/file042.bin", "CWD /data", "LIST", "PORT 127,0,0,1,195,80", "stor upload.bin", "NOOP"};
+
+
+    /**
+     * Parse command line arguments and run the requested benchmark.
+     *
+     * @param args Command line arguments
+     */
+    public static void main( String[] args ) {
+
+        if ( args.length < 1 )
+            usage();
+
+        try {
+            switch ( args[0].toLowerCase() ) {
+                case "retr":
+                    retrieve( argument( args, 1, 2048 ), (int) argument( args, 2, 3 ) );
+                    break;
+
+                case "deflate":
+                    deflate( argument( args, 1, 32 ), argument( args, 2, 200 ),
+                            (int) argument( args, 3, Deflater.DEFAULT_COMPRESSION ) );
+                    break;
+
+                case "ascii":
+                    ascii( argument( args, 1, 512 ), (int) argument( args, 2, 3 ) );
+                    break;
+
+                case "dispatch":
+                    dispatch( argument( args, 1, 10 ), (int) argument( args, 2, 3 ) );
+                    break;
+
+                case "readahead":
+                    readAhead( argument( args, 1, 64 ), argument( args, 2, 5 ), (int) argument( args, 3, 8 ),
+                            argument( args, 4, 1000 ) );
+                    break;
+
+                default:
+                    usage();
+                    break;
+            }
+        } catch ( NumberFormatException e ) {
+            usage();
+        } catch ( Exception e ) {
+            System.out.println( "Benchmark failed: " + e );
+            System.exit( 1 );
+        }
+    }
+
+
+    /* Private Functions */
+
+
+    /**
+     * Compare zero-copy RETR against the buffered copy loop on a file of the given size.
+     *
+     * @param megabytes Size of the file to send
+     * @param runs      Number of timed runs for each strategy
+     * @throws Exception If failed to create the file or send it
+     */
+    private static void retrieve( long megabytes, int runs ) throws Exception {
+        Path file = createFile( megabytes * MEGABYTE, false );
+        BufferPool buffers = new BufferPool( 1, false );
+        try {
+            System.out.println( "RETR of a " + megabytes + " MB file, best of " + runs + " runs" );
+            report( "transferTo", measure( file, runs, DataTransfer::sendFile ), megabytes );
+            report( "buffered copy", measure( file, runs, ( source, position, end, target ) ->
+                    DataTransfer.copy( source, position, end, target, buffers ) ), megabytes );
+        } finally {
+            Files.deleteIfExists( file );
+        }
+    }
+
+    /**
+     * Compare the wall clock time of stream mode and MODE Z transfers over a link of limited bandwidth,
+     * for a compressible log file and an incompressible random file.
+     *
+     * @param megabytes Size of the files to send
+     * @param linkMbps  Bandwidth of the simulated link in megabits per second
+     * @param level     Deflate level from 0 to 9, or -1 for the zlib default
+     * @throws Exception If failed to create the files or send them
+     */
+    private static void deflate( long megabytes, long linkMbps, int level ) throws Exception {
+        long rate = linkMbps * 1000000 / 8;
+        Deflater deflater = new Deflater( level );
+        BufferPool buffers = new BufferPool( 1, false );
+        ByteBuffer buffer = ByteBuffer.allocateDirect( 64 * 1024 );
+
+        Strategy stream = ( file, position, end, target ) ->
+                DataTransfer.sendFile( file, position, end, new Link( target, rate ) );
+        Strategy compressed = ( file, position, end, target ) -> {
+            DeflaterChannel deflating = new DeflaterChannel( new Link( target, rate ), deflater, buffer );
+            DataTransfer.copy( file, position, end, deflating, buffers );
+            deflating.close();
+            return deflating.getBytesWritten();
+        };
+
+        System.out.println( "RETR of " + megabytes + " MB files over a " + linkMbps + " Mbit/s link, deflate level "
+                + level + ", best of " + DEFLATE_RUNS + " runs" );
+        for ( boolean compressible : new boolean[]{true, false} ) {
+            Path file = createFile( megabytes * MEGABYTE, compressible );
+            try {
+                System.out.println( compressible ? "  Log file" : "  Random file" );
+                report( "MODE S", measure( file, DEFLATE_RUNS, stream ), megabytes );
+                report( "MODE Z", measure( file, DEFLATE_RUNS, compressed ), megabytes );
+            } finally {
+                Files.deleteIfExists( file );
+            }
+        }
+
+        deflater.end();
+    }
+
+    /**
+     * Compare binary RETR against TYPE A RETR, which translates line endings, on a log file of the given size.
+     * Translating needs the bytes in user space, so TYPE A is held against binary RETR through the same pooled
+     * buffer copy. Zero-copy sendfile, which no translation can use, is reported separately for reference.
+     *
+     * @param megabytes Size of the file to send
+     * @param runs      Number of timed runs for each strategy
+     * @throws Exception If failed to create the file or send it
+     */
+    private static void ascii( long megabytes, int runs ) throws Exception {
+        BufferPool buffers = new BufferPool( 2, false );
+        AsciiTranscoder transcoder = new AsciiTranscoder();
+        Path file = createFile( megabytes * MEGABYTE, true );
+        try {
+            System.out.println( "RETR of a " + megabytes + " MB log file, best of " + runs + " runs" );
+            long binary = measure( file, runs, ( channel, position, end, target ) ->
+                    DataTransfer.copy( channel, position, end, target, buffers ) );
+            long ascii = measure( file, runs, ( channel, position, end, target ) ->
+                    transcoder.send( channel, position, end, target, buffers, null ) );
+            report( "TYPE I copy", binary, megabytes );
+            report( "TYPE A", ascii, megabytes );
+            System.out.printf( "    TYPE A takes %.1f%% longer than TYPE I through the same copy%n",
+                    100.0 * (ascii - binary) / binary );
+
+            System.out.println( "  Zero-copy reference" );
+            report( "TYPE I sendfile", measure( file, runs, DataTransfer::sendFile ), megabytes );
+        } finally {
+            Files.deleteIfExists( file );
+        }
+    }
+
+    /**
+     * Compare the synchronous read-then-write loop against the read-ahead pipeline over a link of limited bandwidth,
+     * reading a file through a stand-in for network storage which delays every read by the given latency.
+     * A read-ahead depth of one is the synchronous loop, each chunk is read only once the previous one is sent.
+     *
+     * @param megabytes     Size of the file to send
+     * @param latencyMillis Delay of every read of the file in milliseconds
+     * @param depth         Number of chunks the pipeline reads ahead
+     * @param linkMbps      Bandwidth of the simulated link in megabits per second
+     * @throws Exception If failed to create the file or send it
+     */
+    private static void readAhead( long megabytes, long latencyMillis, int depth, long linkMbps ) throws Exception {
+        long rate = linkMbps * 1000000 / 8;
+        BufferPool buffers = new BufferPool( depth, false );
+        ReadAhead synchronous = new ReadAhead( 1, buffers );
+        ReadAhead pipelined = new ReadAhead( depth, buffers );
+
+        Path file = createFile( megabytes * MEGABYTE, false );
+        try ( FileChannel stored = FileChannel.open( file, StandardOpenOption.READ );
+              SlowFile slow = new SlowFile( pipelined.open( stored ), latencyMillis ) ) {
+            System.out.println( "RETR of a " + megabytes + " MB file from storage with " + latencyMillis + " ms reads over a "
+                    + linkMbps + " Mbit/s link, " + ReadAhead.CHUNK / 1024 + " KB chunks, best of " + READ_AHEAD_RUNS + " runs" );
+            report( "read then write", measure( file, READ_AHEAD_RUNS, ( channel, position, end, target ) ->
+                    synchronous.send( slow, position, end, new Link( target, rate ), null ) ), megabytes );
+            report( "read ahead " + depth, measure( file, READ_AHEAD_RUNS, ( channel, position, end, target ) ->
+                    pipelined.send( slow, position, end, new Link( target, rate ), null ) ), megabytes );
+        } finally {
+            Files.deleteIfExists( file );
+        }
+    }
+
+    /**
+     * Compare the legacy command parser, which decodes, splits and upper cases every line before switching on its verb,
+     * against the byte level tokenizer and the dispatcher's verb table.
+     * Both parsers find the verb's handler and decode the first argument, as every handler would.
+     *
+     * @param millions Millions of commands to parse in each run
+     * @param runs     Number of timed runs for each parser
+     */
+    private static void dispatch( long millions, int runs ) {
+        byte[][] lines = new byte[COMMANDS.length][];
+        for ( int i = 0; i < lines.length; ++i )
+            lines[i] = (COMMANDS[i] + "\r\n").getBytes( StandardCharsets.UTF_8 );
+
+        long commands = millions * 1000000;
+        CommandLine command = new CommandLine();
+        Parser legacy = line -> legacyParse( new String( line, 0, line.length - 2, StandardCharsets.UTF_8 ) );
+        Parser tokenizer = line -> {
+            command.set( line, 0, line.length - 2 );
+            String verb = CommandDispatcher.verb( command.getVerbCode() );
+            return (verb == null ? 0 : verb.length()) + command.argument( 0 ).length();
+        };
+
+        System.out.println( "Parsing of " + millions + " million commands, " + runs + " runs after a warm up run" );
+        for ( int run = 0; run <= runs; ++run ) {
+            boolean timed = run > 0;
+            reportParser( "split and switch", parse( lines, commands, legacy ), commands, timed );
+            reportParser( "verb table", parse( lines, commands, tokenizer ), commands, timed );
+        }
+    }
+
+    /**
+     * Time parsing the given number of commands, cycling through the sample lines.
+     *
+     * @param lines    Sample command lines with their CRLF terminators
+     * @param commands Number of commands to parse
+     * @param parser   Parser to measure
+     * @return Elapsed nanoseconds and allocated bytes of the run
+     */
+    private static long[] parse( byte[][] lines, long commands, Parser parser ) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+
+        // Consume every result so the JIT cannot drop the parsing
+        long consumed = 0;
+        for ( long i = 0; i < commands; ++i )
+            consumed += parser.parse( lines[(int) (i % lines.length)] );
+
+        long elapsed = System.nanoTime() - start;
+        if ( consumed == 0 )
+            System.out.println( "No commands parsed" );
+
+        return new long[]{elapsed, threads.getCurrentThreadAllocatedBytes() - allocated};
+    }
+
+    /**
+     * Parse a command the way the dispatcher did before the verb table, by splitting it and switching on its verb.
+     *
+     * @param command Command line without its line terminator
+     * @return Length of the verb's name and its first argument
+     */
+    private static int legacyParse( String command ) {
+        String[] tokens = command.split( " " );
+        String verb = tokens[0].toUpperCase();
+        String argument = tokens.length < 2 ? "" : tokens[1];
+
+        switch ( verb ) {
+            case "TYPE": case "CDUP": case "PASV": case "PORT": case "LIST": case "MLSD": case "REST": case "RANG":
+            case "SIZE": case "RETR": case "STOR": case "APPE": case "ALLO": case "MODE": case "OPTS": case "SITE":
+            case "QUIT": case "CWD": case "PWD":
+                return verb.length() + argument.length();
+
+            default:
+                return argument.length();
+        }
+    }
+
+    /**
+     * Time sending the file over a loopback socket with the given strategy.
+     * One untimed run warms the page cache and the JIT before the timed runs.
+     *
+     * @param file     File to send
+     * @param runs     Number of timed runs
+     * @param strategy Transfer strategy to measure
+     * @return Fastest run in nanoseconds
+     * @throws Exception If failed to send the file
+     */
+    private static long measure( Path file, int runs, Strategy strategy ) throws Exception {
+        long best = Long.MAX_VALUE;
+
+        for ( int run = 0; run <= runs; ++run ) {
+            try ( FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ) ) {
+                long elapsed = send( channel, strategy );
+                if ( run > 0 )
+                    best = Math.min( best, elapsed );
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Send a file once to a discarding sink over loopback.
+     *
+     * @param file     File to send
+     * @param strategy Transfer strategy to use
+     * @return Elapsed time in nanoseconds, until the sink has read every byte
+     * @throws Exception If failed to send the file
+     */
+    private static long send( FileChannel file, Strategy strategy ) throws Exception {
+        try ( ServerSocketChannel server = ServerSocketChannel.open() ) {
+            server.bind( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ) );
+            Sink sink = new Sink( server );
+            sink.start();
+
+            long start = System.nanoTime();
+            long sent;
+            try ( SocketChannel data = SocketChannel.open( server.getLocalAddress() ) ) {
+                sent = strategy.send( file, 0, file.size(), data );
+            }
+            sink.join();
+            long elapsed = System.nanoTime() - start;
+
+            if ( sink.received != sent )
+                throw new IOException( "Sink received " + sink.received + " of " + sent + " bytes" );
+
+            return elapsed;
+        }
+    }
+
+    /**
+     * Create a temporary file of the given size, filled with either random bytes or server log lines.
+     * Random bytes do not compress at all, the log lines compress about as well as real logs.
+     *
+     * @param size         Size of the file in bytes
+     * @param compressible True to fill the file with log lines, false for random bytes
+     * @return Path of the new file
+     * @throws IOException If failed to write the file
+     */
+    private static Path createFile( long size, boolean compressible ) throws IOException {
+        Path file = Files.createTempFile( "ftp-benchmark", ".dat" );
+
+        // Fill one megabyte block and write it repeatedly
+        Random random = new Random( 351 );
+        ByteBuffer block = ByteBuffer.allocateDirect( MEGABYTE );
+        if ( compressible ) {
+            while ( block.remaining() > 128 ) {
+                String line = String.format( "2026-10-18 %02d:%02d:%02d INFO [session-%d] RETR /data/file%03d.bin "
+                                + "226 Transfer complete, %d bytes%n", random.nextInt( 24 ), random.nextInt( 60 ),
+                        random.nextInt( 60 ), random.nextInt( 64 ), random.nextInt( 1000 ), random.nextInt( 100000 ) );
+                block.put( line.getBytes() );
+            }
+            while ( block.hasRemaining() )
+                block.put( (byte) '\n' );
+        }
+        else {
+            byte[] bytes = new byte[MEGABYTE];
+            random.nextBytes( bytes );
+            block.put( bytes );
+        }
+
+        try ( FileChannel channel = FileChannel.open( file, StandardOpenOption.WRITE ) ) {
+            for ( long written = 0; written < size; written += MEGABYTE ) {
+                block.clear();
+                block.limit( (int) Math.min( MEGABYTE, size - written ) );
+                while ( block.hasRemaining() )
+                    channel.write( block );
+            }
+        }
+
+        return file;
+    }
+
+    /**
+     * Display the time and throughput of a benchmark.
+     *
+     * @param name      Name of the measured strategy
+     * @param nanos     Elapsed time in nanoseconds
+     * @param megabytes Number of megabytes transferred
+     */
+    private static void report( String name, long nanos, long megabytes ) {
+        double seconds = nanos / 1e9;
+        System.out.printf( "    %-16s %8.3f s %10.1f MB/s%n", name, seconds, megabytes / seconds );
+    }
+
+    /**
+     * Display the cost per command and the allocation per command of a parsing run.
+     *
+     * @param name     Name of the measured parser
+     * @param result   Elapsed nanoseconds and allocated bytes of the run
+     * @param commands Number of commands parsed
+     * @param timed    False for the warm up run, which is not displayed
+     */
+    private static void reportParser( String name, long[] result, long commands, boolean timed ) {
+        if ( timed )
+            System.out.printf( "    %-16s %8.1f ns/op %8.1f B/op%n", name, (double) result[0] / commands,
+                    (double) result[1] / commands );
+    }
+
+    /**
+     * Parse an optional numeric command line argument.
+     *
+     * @param args         Command line arguments
+     * @param index        Index of the argument
+     * @param defaultValue Value used when the argument is missing
+     * @return Parsed argument
+     */
+    private static long argument( String[] args, int index, long defaultValue ) {
+        if ( args.length <= index )
+            return defaultValue;
+
+        return Long.parseLong( args[index] );
+    }
+
+    /**
+     * Display a usage message to the console and close the program.
+     */
+    private static void usage() {
+        System.out.println( USAGE );
+        System.exit( 1 );
+    }
+
+
+    /**
+     * A way of sending a file over a data connection.
+     */
+    private interface Strategy {
+
+        /**
+         * Send the given range of the file.
+         *
+         * @param file     File to send
+         * @param position Offset of the first byte to send
+         * @param end      Offset after the last byte to send
+         * @param target   Channel to send the bytes to
+         * @return Number of bytes written to the target
+         * @throws IOException If failed to read the file or write to the target
+         */
+        long send( FileChannel file, long position, long end, WritableByteChannel target ) throws IOException;
+    }
+
+
+    /**
+     * A way of parsing a received command line.
+     */
+    private interface Parser {
+
+        /**
+         * Parse a command line.
+         *
+         * @param line Command line with its CRLF terminator
+         * @return Value derived from the parsed command, consumed by the caller
+         */
+        int parse( byte[] line );
+    }
+
+
+    /**
+     * Channel simulating a link of limited bandwidth in front of the data connection.
+     */
+    private static class Link implements WritableByteChannel {
+
+
+        // Private global variables
+        private WritableByteChannel target;
+        private TokenBucket bandwidth;
+
+
+        /**
+         * Constructor for the Link class.
+         *
+         * @param target Channel to write to
+         * @param rate   Bandwidth of the link in bytes per second
+         */
+        private Link( WritableByteChannel target, long rate ) {
+            this.target = target;
+            bandwidth = new TokenBucket( rate, null );
+        }
+
+        @Override
+        public int write( ByteBuffer source ) throws IOException {
+            // Send at most a quantum at a time so the rate is kept within each write
+            int limit = source.limit();
+            source.limit( source.position() + Math.min( source.remaining(), TokenBucket.QUANTUM ) );
+            int written = target.write( source );
+            source.limit( limit );
+
+            bandwidth.acquire( written );
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return target.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            target.close();
+        }
+    }
+
+
+    /**
+     * Stand-in for a file on network storage, which completes every read only after a fixed latency.
+     * Reads wait out their latency on threads of their own, so reads issued together overlap as they would on a NAS.
+     */
+    private static class SlowFile extends AsynchronousFileChannel {
+
+
+        // Private global variables
+        private AsynchronousFileChannel file;
+        private long latencyMillis;
+        private ExecutorService delays = Executors.newCachedThreadPool( task -> {
+            Thread thread = new Thread( task, "SlowFile" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+
+
+        /**
+         * Constructor for the SlowFile class.
+         *
+         * @param file          Channel of the real file, closed along with this one
+         * @param latencyMillis Delay of every read in milliseconds
+         */
+        private SlowFile( AsynchronousFileChannel file, long latencyMillis ) {
+            this.file = file;
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        public Future<Integer> read( ByteBuffer target, long position ) {
+            return delays.submit( () -> {
+                Thread.sleep( latencyMillis );
+                return file.read( target, position ).get();
+            } );
+        }
+
+        @Override
+        public <A> void read( ByteBuffer target, long position, A attachment,
+                              CompletionHandler<Integer, ? super A> handler ) {
+            delays.execute( () -> {
+                try {
+                    Thread.sleep( latencyMillis );
+                } catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                }
+                file.read( target, position, attachment, handler );
+            } );
+        }
+
+        @Override
+        public long size() throws IOException {
+            return file.size();
+        }
+
+        @Override
+        public AsynchronousFileChannel truncate( long size ) throws IOException {
+            file.truncate( size );
+            return this;
+        }
+
+        @Override
+        public void force( boolean metaData ) throws IOException {
+            file.force( metaData );
+        }
+
+        @Override
+        public <A> void lock( long position, long size, boolean shared, A attachment,
+                              CompletionHandler<FileLock, ? super A> handler ) {
+            file.lock( position, size, shared, attachment, handler );
+        }
+
+        @Override
+        public Future<FileLock> lock( long position, long size, boolean shared ) {
+            return file.lock( position, size, shared );
+        }
+
+        @Override
+        public FileLock tryLock( long position, long size, boolean shared ) throws IOException {
+            return file.tryLock( position, size, shared );
+        }
+
+        @Override
+        public <A> void write( ByteBuffer source, long position, A attachment,
+                               CompletionHandler<Integer, ? super A> handler ) {
+            file.write( source, position, attachment, handler );
+        }
+
+        @Override
+        public Future<Integer> write( ByteBuffer source, long position ) {
+            return file.write( source, position );
+        }
+
+        @Override
+        public boolean isOpen() {
+            return file.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delays.shutdown();
+            file.close();
+        }
+    }
+
+
+    /**
+     * Thread which accepts one connection and discards everything it receives.
+     */
+    private static class Sink extends Thread {
+
+
+        // Private global variables
+        private ServerSocketChannel server;
+        private volatile long received = 0;
+
+
+        /**
+         * Constructor for the Sink class.
+         *
+         * @param server Listening channel to accept the sender on
+         */
+        private Sink( ServerSocketChannel server ) {
+            this.server = server;
+        }
+
+        @Override
+        public void run() {
+            ByteBuffer buffer = ByteBuffer.allocateDirect( SINK_BUFFER );
+
+            try ( SocketChannel channel = server.accept() ) {
+                long total = 0;
+                int readBytes;
+                while ( (readBytes = channel.read( buffer )) != -1 ) {
+                    total += readBytes;
+                    buffer.clear();
+                }
+                received = total;
+            } catch ( IOException e ) {
+            }
+        }
+    }
+
+}
@@ -1,7 +1,11 @@
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.net.SocketTimeoutException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * An RFC959 compliant FTP server.
@@ -14,122 +18,189 @@ public class FTPServer {
 
     // Private constants
     private static final String USAGE = "Usage: java FTPServer [<PortNumber>]";
-    private static final int TIMEOUT = 60000;
+    private static final Logger LOGGER = Logger.getLogger( FTPServer.class.getName() );
 
 
     /**
      * Parse command line arguments for required input.
-     * Being accepting connections on the server.
-     * When a client connects, log the client into the server and being a timeout on its connection.
-     * Begin reading commands from the client.
-     * Close connection to the client on communication error, client quit, or timeout.
+     * Being accepting connections on the server using the configured engine.
+     * The blocking engine serves each connecting client on its own virtual thread,
+     * the nio engine multiplexes every idle control connection on a single selector thread.
      *
      * @param args Command line arguments
      */
     public static void main( String[] args ) {
 
+        int port = 2121;
+
+        // Verify arguments
+        if ( args.length > 0 ) {
+            try {
+                port = Integer.parseInt( args[0] );
+            } catch ( NumberFormatException e ) {
+                usage();
+            }
+        }
+
+        ExecutorService sessions = newSessionExecutor();
+        ServerContext context = null;
         ServerSocket socket = null;
-        ClientProxy proxy = null;
+        NioServer selector = null;
 
-        // Verify arguments and initialize
+        // Initialize the configured engine
         try {
-            if ( args.length == 0 ) {
-                socket = new ServerSocket( 2121 );
-            }
-            else {
-                try {
-                    socket = new ServerSocket( Integer.parseInt( args[0] ) );
-                } catch ( NumberFormatException e ) {
-                    usage();
-                }
-            }
+            context = new ServerContext();
+            if ( context.getEngine().equals( ServerContext.ENGINE_NIO ) )
+                selector = new NioServer( port, context, sessions );
+            else
+                socket = new ServerSocket( port );
         } catch ( Exception e ) {
             usage();
         }
 
         // Begin accepting connections
+        if ( selector != null )
+            selector.run();
+        else
+            acceptLoop( socket, context, sessions );
+    }
+
+
+    /* Private Functions */
+
+
+    /**
+     * Accept connecting clients on the blocking engine.
+     * Each client is served by its own session, up to the configured maximum number of concurrent sessions.
+     *
+     * @param socket   Server socket to accept clients on
+     * @param context  Server wide configuration and resources
+     * @param sessions Executor to run client sessions on
+     */
+    private static void acceptLoop( ServerSocket socket, ServerContext context, ExecutorService sessions ) {
+
+        Semaphore slots = new Semaphore( context.getMaxSessions() );
+
         while ( true ) {
             try {
-                // Accept connecting client
-                Socket client = socket.accept();
-                client.setSoTimeout( TIMEOUT );
-
-                // Setup proxy object
-                proxy = new ClientProxy( client );
-
-                // Welcome and login client
-                proxy.welcome();
-                if ( !proxy.login() ) continue;
-
-                // Receive and parse client's commands
-                while ( true ) {
-                    String[] tokens = proxy.readCommand().split( " " );
-
-                    switch ( tokens[0].toUpperCase() ) {
-                        case "TYPE":
-                            if ( tokens.length < 2 )
-                                proxy.transferType( "" );
-                            else
-                                proxy.transferType( tokens[1] );
-                            break;
-
-                        case "CDUP":
-                            proxy.directoryUp();
-                            break;
-
-                        case "CWD":
-                            if ( tokens.length < 2 )
-                                proxy.changeDirectory( "" );
-                            else
-                                proxy.changeDirectory( tokens[1] );
-                            break;
-
-                        case "PWD":
-                            proxy.printWorkingDirectory();
-                            break;
-
-                        case "PASV":
-                            proxy.passiveDataConnection();
-                            break;
-
-                        case "PORT":
-                            if ( tokens.length < 2 )
-                                proxy.activeDataConnection( "" );
-                            else
-                                proxy.activeDataConnection( tokens[1] );
-                            break;
-
-                        case "LIST":
-                            proxy.directoryListing();
-                            break;
-
-                        case "RETR":
-                            if ( tokens.length < 2 )
-                                proxy.fileTransfer( "" );
-                            else
-                                proxy.fileTransfer( tokens[1] );
-                            break;
-
-                        case "QUIT":
-                            proxy.quit();
-                            return;
-
-                        default:
-                            proxy.unknownCommand();
-                            break;
-                    }
-                }
+                // Wait for a free session slot before accepting the next client
+                slots.acquire();
 
-            } catch ( SocketTimeoutException ex ) {
+                Socket client;
                 try {
-                    proxy.timeout();
+                    client = socket.accept();
                 } catch ( IOException e ) {
+                    slots.release();
+                    continue;
                 }
-            } catch ( Exception e ) {
+
+                sessions.execute( () -> {
+                    try {
+                        session( client, context );
+                    } finally {
+                        slots.release();
+                    }
+                } );
+            } catch ( InterruptedException e ) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Log the client into the server and being a timeout on its connection.
+     * Begin reading commands from the client.
+     * Close connection to the client on communication error, client quit, or timeout.
+     * The idle timeout is tracked on the server's timing wheel, which shuts down the connection's input
+     * so the blocked read returns and the session can send its timeout reply.
+     *
+     * @param client  Command socket connected to the client
+     * @param context Server wide configuration and resources
+     */
+    private static void session( Socket client, ServerContext context ) {
+
+        ClientProxy proxy = null;
+        TimingWheel timers = context.getTimers();
+        Runnable expire = () -> shutdownInput( client );
+        TimingWheel.Timeout idle = timers.schedule( context.getIdleTimeout(), expire );
+        context.getMetrics().sessionOpened();
+
+        try {
+            // Small replies must not wait on Nagle's algorithm for the client's delayed ACK
+            client.setTcpNoDelay( true );
+
+            // Setup proxy object, replying to each pipelined batch of commands in one write
+            proxy = new ClientProxy( client, context );
+            proxy.setCoalescing( true );
+
+            // Welcome and login client
+            proxy.welcome();
+            proxy.flushReplies();
+            boolean connected = proxy.login();
+            if ( !connected || !proxy.hasPendingCommand() )
+                proxy.flushReplies();
+
+            // Receive and parse client's commands
+            CommandLine command;
+            while ( connected && (command = proxy.readCommand()) != null ) {
+                // Commands are never timed out while they run
+                if ( !idle.cancel() ) break;
+
+                connected = CommandDispatcher.dispatch( proxy, command );
+                if ( !proxy.hasPendingCommand() )
+                    proxy.flushReplies();
+
+                idle = timers.schedule( context.getIdleTimeout(), expire );
+            }
+
+            if ( idle.isExpired() )
+                proxy.timeout();
+        } catch ( IOException e ) {
+            // Clients which drop their connection are not an error of the server
+            LOGGER.log( Level.FINE, "Session with " + client.getRemoteSocketAddress() + " closed", e );
+        } catch ( Exception e ) {
+            context.getMetrics().recordError();
+            LOGGER.log( Level.WARNING, "Session with " + client.getRemoteSocketAddress() + " failed", e );
+        } finally {
+            idle.cancel();
+            context.getMetrics().sessionClosed();
+            if ( proxy != null )
+                proxy.close();
+
+            try {
+                client.close();
+            } catch ( IOException e ) {
             }
         }
     }
 
+    /**
+     * Shut down the input of a timed out client's connection, waking the session's blocked read.
+     *
+     * @param client Command socket connected to the client
+     */
+    private static void shutdownInput( Socket client ) {
+        try {
+            client.shutdownInput();
+        } catch ( IOException e ) {
+        }
+    }
+
+    /**
+     * Creates the executor which runs client sessions.
+     * Each session gets its own virtual thread when the running JVM supports them,
+     * otherwise sessions fall back to a cached pool of platform threads.
+     *
+     * @return Executor that starts a new thread for every submitted session
+     */
+    private static ExecutorService newSessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" ).invoke( null );
+        } catch ( ReflectiveOperationException e ) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
     /**
      * Display a usage message to the console and close the program.
      */
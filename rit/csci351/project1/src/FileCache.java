@@ -0,0 +1,250 @@
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of open FileChannels and the size of the files they read, keyed by the real path of each file.
+ * Concurrent transfers of the same file share one reference counted handle, which only reads with positional reads,
+ * and a handle's channel is closed once it has been dropped from the cache and its last transfer is done.
+ * Entries are dropped as soon as the DirectoryWatcher reports a change to their file,
+ * so a repeated RETR of an unchanged file opens and stats nothing.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class FileCache implements DirectoryWatcher.Listener {
+
+
+    // Private global variables
+    private Storage storage;
+    private DirectoryWatcher watcher;
+    private Map<Path, Handle> files;
+    private AtomicLong generation = new AtomicLong();
+    private LongAdder hits = new LongAdder();
+    private LongAdder misses = new LongAdder();
+
+
+    /* Public Functions */
+
+
+    /**
+     * Constructor for the FileCache class.
+     *
+     * @param storage    Storage the files are opened from
+     * @param watcher    Watcher reporting directory changes, or null to disable caching
+     * @param maxEntries Maximum number of files to keep open, least recently sent are dropped first
+     */
+    public FileCache( Storage storage, DirectoryWatcher watcher, int maxEntries ) {
+        this.storage = storage;
+        this.watcher = watcher;
+        files = new LinkedHashMap<Path, Handle>( 16, 0.75f, true ) {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<Path, Handle> eldest ) {
+                if ( size() <= maxEntries )
+                    return false;
+
+                eldest.getValue().close();
+                watcher.unwatch( eldest.getKey().getParent() );
+                return true;
+            }
+        };
+
+        if ( watcher != null )
+            watcher.addListener( this );
+    }
+
+    /**
+     * Opens a regular file for reading, sharing the cached handle when there is one.
+     * Every handle returned must be closed once the caller is done with it.
+     *
+     * @param path Path of the file
+     * @return Handle of the open file
+     * @throws FileNotFoundException If the path is not a regular file
+     * @throws IOException           If the file does not exist or cannot be read
+     */
+    public Handle open( Path path ) throws IOException {
+        Path key = storage.toRealPath( path );
+        synchronized ( files ) {
+            Handle handle = files.get( key );
+            if ( handle != null ) {
+                hits.increment();
+                handle.references.incrementAndGet();
+                return handle;
+            }
+        }
+
+        misses.increment();
+
+        // Only cache files whose changes will be reported
+        long stamp = generation.get();
+        Path parent = key.getParent();
+        boolean watched = watcher != null && parent != null && watcher.watch( parent );
+
+        // A cached file keeps the reference to its directory's watch until it is dropped
+        boolean cached = false;
+        try {
+            BasicFileAttributes attributes = storage.readAttributes( key );
+            if ( !attributes.isRegularFile() )
+                throw new FileNotFoundException( path.toString() );
+
+            Handle handle = new Handle( storage.open( key ), attributes.size() );
+
+            if ( watched ) {
+                synchronized ( files ) {
+                    // Skip the update if the file may have changed while it was opened
+                    if ( generation.get() == stamp && !files.containsKey( key ) ) {
+                        handle.references.incrementAndGet();
+                        files.put( key, handle );
+                        cached = true;
+                    }
+                }
+            }
+
+            return handle;
+        } finally {
+            if ( watched && !cached )
+                watcher.unwatch( parent );
+        }
+    }
+
+    /**
+     * Drops the cached handle of a file the server itself just changed.
+     *
+     * @param path Path of the changed file
+     */
+    public void invalidate( Path path ) {
+        try {
+            Path key = storage.toRealPath( path );
+            changed( key.getParent(), key );
+        } catch ( IOException e ) {
+        }
+    }
+
+    /**
+     * Drops the cached handle of a changed file.
+     *
+     * @param directory Directory which changed
+     * @param entry     Entry of the directory which changed, or null if any entry may have changed
+     */
+    @Override
+    public void changed( Path directory, Path entry ) {
+        synchronized ( files ) {
+            generation.incrementAndGet();
+
+            if ( entry != null ) {
+                Handle handle = files.remove( entry );
+                if ( handle != null ) {
+                    handle.close();
+                    watcher.unwatch( directory );
+                }
+                return;
+            }
+
+            Iterator<Map.Entry<Path, Handle>> cached = files.entrySet().iterator();
+            while ( cached.hasNext() ) {
+                Map.Entry<Path, Handle> file = cached.next();
+                if ( directory.equals( file.getKey().getParent() ) ) {
+                    file.getValue().close();
+                    cached.remove();
+                    watcher.unwatch( directory );
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of transfers which shared a cached handle.
+     *
+     * @return Number of cache hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of transfers which had to open their file.
+     *
+     * @return Number of cache misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the number of files currently held open by the cache.
+     *
+     * @return Number of cached handles
+     */
+    public int getSize() {
+        synchronized ( files ) {
+            return files.size();
+        }
+    }
+
+
+    /**
+     * An open file shared by the cache and every transfer using it.
+     */
+    public static class Handle implements Closeable {
+
+
+        // Private global variables
+        private FileChannel channel;
+        private long size;
+        private AtomicInteger references = new AtomicInteger( 1 );
+
+
+        /**
+         * Constructor for the Handle class.
+         *
+         * @param channel Channel reading the file
+         * @param size    Size of the file when it was opened
+         */
+        private Handle( FileChannel channel, long size ) {
+            this.channel = channel;
+            this.size = size;
+        }
+
+        /**
+         * Gets the channel reading the file.
+         * The channel is shared, so it must only be read with positional reads and transfers.
+         *
+         * @return Channel of the file
+         */
+        public FileChannel getChannel() {
+            return channel;
+        }
+
+        /**
+         * Gets the size of the file when it was opened.
+         *
+         * @return Size in bytes
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Releases one reference to the handle, closing its channel when none are left.
+         */
+        @Override
+        public void close() {
+            if ( references.decrementAndGet() > 0 ) return;
+
+            try {
+                channel.close();
+            } catch ( IOException e ) {
+            }
+        }
+    }
+
+}
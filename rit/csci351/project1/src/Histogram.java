@@ -0,0 +1,137 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of non-negative values, such as latencies in nanoseconds, which any number of threads record into at once.
+ * Values are counted in log-linear buckets, eight per power of two, so a percentile is accurate to within 12.5%
+ * while the whole histogram takes a fixed 4 KB. Recording is a few atomic increments and never takes a lock.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class Histogram {
+
+
+    // Private constants
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    // Private global variables
+    private AtomicLongArray counts = new AtomicLongArray( BUCKETS );
+    private LongAdder count = new LongAdder();
+    private LongAdder sum = new LongAdder();
+    private AtomicLong max = new AtomicLong();
+
+
+    /* Public Functions */
+
+
+    /**
+     * Records a single value.
+     *
+     * @param value Value to record, negative values are recorded as 0
+     */
+    public void record( long value ) {
+        value = Math.max( 0, value );
+
+        counts.incrementAndGet( bucket( value ) );
+        count.increment();
+        sum.add( value );
+
+        // Most values are below the maximum, so only those above it pay for the compare and set
+        if ( value > max.get() )
+            max.accumulateAndGet( value, Math::max );
+    }
+
+    /**
+     * Gets the number of recorded values.
+     *
+     * @return Number of values
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Gets the mean of the recorded values.
+     *
+     * @return Mean value, or 0 if nothing was recorded
+     */
+    public long getMean() {
+        long values = count.sum();
+        return values == 0 ? 0 : sum.sum() / values;
+    }
+
+    /**
+     * Gets the largest recorded value.
+     *
+     * @return Maximum value, or 0 if nothing was recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the value below which the given fraction of the recorded values fall.
+     * Values recorded while the histogram is read may or may not be counted.
+     *
+     * @param fraction Fraction of values between 0 and 1, such as 0.99 for the 99th percentile
+     * @return Upper bound of the bucket holding the percentile, or 0 if nothing was recorded
+     */
+    public long getPercentile( double fraction ) {
+        long values = 0;
+        for ( int i = 0; i < BUCKETS; ++i )
+            values += counts.get( i );
+        if ( values == 0 )
+            return 0;
+
+        long rank = Math.max( 1, (long) Math.ceil( fraction * values ) );
+        long seen = 0;
+        for ( int i = 0; i < BUCKETS; ++i ) {
+            seen += counts.get( i );
+            if ( seen >= rank )
+                return Math.min( upperBound( i ), max.get() );
+        }
+
+        return max.get();
+    }
+
+
+    /* Private Functions */
+
+
+    /**
+     * Get the bucket which counts the given value.
+     * Values below SUB_BUCKETS each have their own bucket, larger values share a bucket
+     * with the others of the same power of two and the same three bits after the leading one.
+     *
+     * @param value Non-negative value
+     * @return Index of the value's bucket
+     */
+    private static int bucket( long value ) {
+        if ( value < SUB_BUCKETS )
+            return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros( value );
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Get the largest value counted by a bucket.
+     *
+     * @param bucket Index of the bucket
+     * @return Largest value of the bucket
+     */
+    private static long upperBound( int bucket ) {
+        if ( bucket < SUB_BUCKETS )
+            return bucket;
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+}
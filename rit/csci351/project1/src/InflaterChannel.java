@@ -0,0 +1,107 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Channel which decompresses a zlib stream read from the source channel, as sent by clients in MODE Z.
+ * The Inflater and its input buffer are owned by the caller, so a session reuses them for every upload
+ * and compressed bytes are read straight into native memory instead of through a stream's heap buffer.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class InflaterChannel implements ReadableByteChannel {
+
+
+    // Private global variables
+    private ReadableByteChannel source;
+    private Inflater inflater;
+    private ByteBuffer buffer;
+    private boolean open = true;
+
+
+    /* Public Functions */
+
+
+    /**
+     * Constructor for the InflaterChannel class.
+     * Resets the inflater so it starts a new stream.
+     *
+     * @param source   Channel to read the compressed stream from, left open when this channel is closed
+     * @param inflater Inflater to decompress with
+     * @param buffer   Buffer to hold compressed bytes read from the source
+     */
+    public InflaterChannel( ReadableByteChannel source, Inflater inflater, ByteBuffer buffer ) {
+        this.source = source;
+        this.inflater = inflater;
+        this.buffer = buffer;
+
+        inflater.reset();
+        buffer.clear().limit( 0 );
+    }
+
+    /**
+     * Decompresses bytes into the given buffer, reading more of the compressed stream whenever the inflater runs dry.
+     *
+     * @param target Buffer to fill with uncompressed bytes
+     * @return Number of bytes produced, or -1 once the compressed stream has ended
+     * @throws EOFException If the source ends before the compressed stream does
+     * @throws ZipException If the compressed stream is malformed
+     * @throws IOException  If failed to read from the source
+     */
+    @Override
+    public int read( ByteBuffer target ) throws IOException {
+        if ( !open )
+            throw new ClosedChannelException();
+
+        while ( target.hasRemaining() ) {
+            if ( inflater.finished() )
+                return -1;
+
+            if ( inflater.needsDictionary() )
+                throw new ZipException( "Compressed stream needs a preset dictionary" );
+
+            if ( inflater.needsInput() ) {
+                buffer.clear();
+                if ( source.read( buffer ) == -1 )
+                    throw new EOFException( "Unexpected end of compressed stream" );
+                buffer.flip();
+                inflater.setInput( buffer );
+            }
+
+            try {
+                int produced = inflater.inflate( target );
+                if ( produced > 0 )
+                    return produced;
+            } catch ( DataFormatException e ) {
+                throw new ZipException( e.getMessage() );
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Stops reading, leaving the source open.
+     */
+    @Override
+    public void close() {
+        open = false;
+    }
+
+    /**
+     * Gets whether the channel can still be read.
+     *
+     * @return true until the channel is closed
+     */
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+}
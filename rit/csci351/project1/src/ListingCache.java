@@ -0,0 +1,162 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of encoded LIST and MLSD payloads, keyed by the real path of the listed directory.
+ * Entries are dropped as soon as the DirectoryWatcher reports a change in their directory,
+ * so a repeated listing of an unchanged directory is a single write of the cached bytes.
+ * Listings too large to cache are streamed straight from the directory on every request.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class ListingCache implements DirectoryWatcher.Listener {
+
+
+    // Private constants
+    private static final int MAX_PAYLOAD = 1024 * 1024;
+    private static final int LIST = 0;
+    private static final int MLSD = 1;
+
+    // Private global variables
+    private Storage storage;
+    private DirectoryWatcher watcher;
+    private Map<Path, byte[][]> listings;
+    private AtomicLong generation = new AtomicLong();
+    private LongAdder hits = new LongAdder();
+    private LongAdder misses = new LongAdder();
+
+
+    /* Public Functions */
+
+
+    /**
+     * Constructor for the ListingCache class.
+     *
+     * @param storage    Storage the directories are listed from
+     * @param watcher    Watcher reporting directory changes, or null to disable caching
+     * @param maxEntries Maximum number of directories to keep, least recently listed are dropped first
+     */
+    public ListingCache( Storage storage, DirectoryWatcher watcher, int maxEntries ) {
+        this.storage = storage;
+        this.watcher = watcher;
+        listings = new LinkedHashMap<Path, byte[][]>( 16, 0.75f, true ) {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<Path, byte[][]> eldest ) {
+                if ( size() <= maxEntries )
+                    return false;
+
+                watcher.unwatch( eldest.getKey() );
+                return true;
+            }
+        };
+
+        if ( watcher != null )
+            watcher.addListener( this );
+    }
+
+    /**
+     * Sends the listing of the given directory to the target channel.
+     * Cached listings are written in a single call, others are streamed while the directory is read.
+     *
+     * @param directory       Directory to list
+     * @param machineReadable True for MLSD facts, false for LIST names
+     * @param target          Channel to write the listing to
+     * @param encoder         Session's encoder used when the listing is not cached
+     * @throws FileNotFoundException If the directory does not exist or cannot be read
+     * @throws IOException           If failed to read the directory or write to the target
+     */
+    public void send( Path directory, boolean machineReadable, WritableByteChannel target, ListingEncoder encoder )
+            throws IOException {
+        if ( !storage.isDirectory( directory ) || !storage.isReadable( directory ) )
+            throw new FileNotFoundException( directory.toString() );
+
+        int format = machineReadable ? MLSD : LIST;
+        Path key = storage.toRealPath( directory );
+        byte[] payload = null;
+        synchronized ( listings ) {
+            byte[][] entry = listings.get( key );
+            if ( entry != null )
+                payload = entry[format];
+        }
+
+        if ( payload != null ) {
+            hits.increment();
+            ByteBuffer listing = ByteBuffer.wrap( payload );
+            while ( listing.hasRemaining() )
+                target.write( listing );
+            return;
+        }
+
+        misses.increment();
+
+        // Only cache directories whose changes will be reported
+        long stamp = generation.get();
+        boolean watched = watcher != null && watcher.watch( key );
+
+        // A cached directory keeps the reference to its watch until it is dropped
+        boolean cached = false;
+        try {
+            payload = encoder.encode( key, machineReadable, target, watched ? MAX_PAYLOAD : 0 );
+
+            if ( payload != null ) {
+                synchronized ( listings ) {
+                    // Skip the update if the directory may have changed while it was read
+                    if ( generation.get() == stamp ) {
+                        byte[][] entry = listings.get( key );
+                        if ( entry == null ) {
+                            entry = new byte[2][];
+                            listings.put( key, entry );
+                            cached = true;
+                        }
+                        entry[format] = payload;
+                    }
+                }
+            }
+        } finally {
+            if ( watched && !cached )
+                watcher.unwatch( key );
+        }
+    }
+
+    /**
+     * Drops the cached listings of a changed directory.
+     *
+     * @param directory Directory which changed
+     * @param entry     Entry of the directory which changed, or null if any entry may have changed
+     */
+    @Override
+    public void changed( Path directory, Path entry ) {
+        synchronized ( listings ) {
+            generation.incrementAndGet();
+            if ( listings.remove( directory ) != null )
+                watcher.unwatch( directory );
+        }
+    }
+
+    /**
+     * Gets the number of listings served from the cache.
+     *
+     * @return Number of cache hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of listings which had to be read from the filesystem.
+     *
+     * @return Number of cache misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+}
@@ -0,0 +1,206 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Streams a directory listing to a data connection while the directory is being read.
+ * Entries are encoded into a direct buffer leased from the pool for the listing, which is written out whenever it fills,
+ * so memory use is bounded by the buffer no matter how many entries the directory holds.
+ * Produces either LIST lines or RFC3659 MLSD fact lines.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class ListingEncoder {
+
+
+    // Private constants
+    private static final int BUFFER = 64 * 1024;
+    private static final int MAX_ENTRY = 1024;
+    private static final byte[] SEPARATOR = System.getProperty( "file.separator" ).getBytes();
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] TYPE_FILE = "type=file;size=".getBytes();
+    private static final byte[] TYPE_DIR = "type=dir;".getBytes();
+    private static final byte[] MODIFY = "modify=".getBytes();
+    private static final byte[] FACTS_END = "; ".getBytes();
+
+    // Private global variables
+    private Storage storage;
+    private BufferPool buffers;
+    private ByteBuffer buffer;
+    private CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput( CodingErrorAction.REPLACE )
+            .onUnmappableCharacter( CodingErrorAction.REPLACE );
+    private ByteBuffer capture;
+    private int captureLimit;
+
+
+    /* Public Functions */
+
+
+    /**
+     * Constructor for the ListingEncoder class.
+     *
+     * @param storage Storage the directories are read from
+     * @param buffers Pool to lease each listing's buffer from
+     */
+    public ListingEncoder( Storage storage, BufferPool buffers ) {
+        this.storage = storage;
+        this.buffers = buffers;
+    }
+
+    /**
+     * Streams the listing of a directory to the target channel.
+     * Optionally keeps a copy of the encoded bytes for caching, as long as they fit in the capture limit.
+     *
+     * @param directory       Directory to list
+     * @param machineReadable True for MLSD facts, false for LIST names
+     * @param target          Channel to write the listing to
+     * @param captureLimit    Maximum number of bytes to keep a copy of, 0 to keep none
+     * @return Copy of the complete listing, or null if it was not kept
+     * @throws IOException If failed to read the directory or write to the target
+     */
+    public byte[] encode( Path directory, boolean machineReadable, WritableByteChannel target, int captureLimit ) throws IOException {
+        this.captureLimit = captureLimit;
+        capture = captureLimit > 0 ? ByteBuffer.allocate( Math.min( captureLimit, BUFFER ) ) : null;
+        buffer = buffers.acquire( BUFFER );
+
+        try ( DirectoryStream<Path> entries = storage.newDirectoryStream( directory ) ) {
+            for ( Path entry : entries ) {
+                if ( buffer.remaining() < MAX_ENTRY )
+                    flush( target );
+
+                // Skip entries which disappear while the directory is read
+                if ( machineReadable ) {
+                    int start = buffer.position();
+                    try {
+                        putFacts( entry );
+                    } catch ( IOException e ) {
+                        buffer.position( start );
+                        continue;
+                    }
+                }
+
+                putName( entry.getFileName().toString() );
+                if ( !machineReadable && storage.isDirectory( entry ) )
+                    buffer.put( SEPARATOR );
+                buffer.put( CRLF );
+            }
+
+            flush( target );
+        } finally {
+            buffers.release( buffer );
+            buffer = null;
+        }
+
+        byte[] listing = capture == null ? null : Arrays.copyOf( capture.array(), capture.position() );
+        capture = null;
+        return listing;
+    }
+
+
+    /* Private Functions */
+
+
+    /**
+     * Put the type, size and modification time facts of an entry into the buffer.
+     *
+     * @param entry Entry to describe
+     * @throws IOException If failed to read the entry's attributes
+     */
+    private void putFacts( Path entry ) throws IOException {
+        BasicFileAttributes attributes = storage.readAttributes( entry );
+
+        if ( attributes.isDirectory() )
+            buffer.put( TYPE_DIR );
+        else {
+            buffer.put( TYPE_FILE );
+            putNumber( attributes.size(), 1 );
+            buffer.put( (byte) ';' );
+        }
+
+        // Modification time as YYYYMMDDHHMMSS in UTC
+        LocalDateTime modified = LocalDateTime.ofEpochSecond(
+                Math.floorDiv( attributes.lastModifiedTime().toMillis(), 1000 ), 0, ZoneOffset.UTC );
+        buffer.put( MODIFY );
+        putNumber( modified.getYear(), 4 );
+        putNumber( modified.getMonthValue(), 2 );
+        putNumber( modified.getDayOfMonth(), 2 );
+        putNumber( modified.getHour(), 2 );
+        putNumber( modified.getMinute(), 2 );
+        putNumber( modified.getSecond(), 2 );
+        buffer.put( FACTS_END );
+    }
+
+    /**
+     * Put an entry's name into the buffer as UTF-8.
+     *
+     * @param name Name of the entry
+     */
+    private void putName( String name ) {
+        encoder.reset();
+        encoder.encode( CharBuffer.wrap( name ), buffer, true );
+        encoder.flush( buffer );
+    }
+
+    /**
+     * Put the decimal digits of a non-negative number into the buffer.
+     *
+     * @param number Number to put
+     * @param digits Minimum number of digits, padded with leading zeros
+     */
+    private void putNumber( long number, int digits ) {
+        int length = 1;
+        for ( long rest = number / 10; rest > 0; rest /= 10 )
+            ++length;
+        length = Math.max( length, digits );
+
+        int end = buffer.position() + length;
+        for ( int i = end - 1; i >= buffer.position(); --i ) {
+            buffer.put( i, (byte) ('0' + number % 10) );
+            number /= 10;
+        }
+        buffer.position( end );
+    }
+
+    /**
+     * Write the buffered bytes to the target and keep a copy of them if still capturing.
+     *
+     * @param target Channel to write to
+     * @throws IOException If failed to write to the target
+     */
+    private void flush( WritableByteChannel target ) throws IOException {
+        buffer.flip();
+
+        // Grow the copy by doubling, up to the capture limit
+        if ( capture != null ) {
+            if ( capture.position() + buffer.remaining() > captureLimit )
+                capture = null;
+            else {
+                if ( capture.remaining() < buffer.remaining() ) {
+                    int capacity = Math.max( capture.position() + buffer.remaining(), 2 * capture.capacity() );
+                    capture = ByteBuffer.wrap( Arrays.copyOf( capture.array(), Math.min( capacity, captureLimit ) ) )
+                            .position( capture.position() );
+                }
+
+                capture.put( buffer );
+                buffer.flip();
+            }
+        }
+
+        while ( buffer.hasRemaining() )
+            target.write( buffer );
+        buffer.clear();
+    }
+
+}
@@ -0,0 +1,388 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator for the FTP server, built on the client's ServerProxy.
+ * Each of the concurrent sessions runs the same script over its own control connection, then quits
+ * and starts over until the run ends. Every command is timed, and the report gives the throughput of the run
+ * and the latency percentiles of each command.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class LoadGenerator {
+
+
+    // Private constants
+    private static final String USAGE = "Usage: java LoadGenerator <Server> <Port> <Sessions> <Seconds> <Script>\n"
+            + "    The script is a file with one step per line, or steps separated by semicolons:\n"
+            + "    login [<username> [<password>]]\n"
+            + "                    Read the welcome message and log in, anonymously by default\n"
+            + "    passive         Open data connections in passive mode\n"
+            + "    active          Open data connections in active mode, the default\n"
+            + "    compress [<level>]\n"
+            + "                    Switch to compressed (MODE Z) transfers\n"
+            + "    list            List the working directory, discarding the listing\n"
+            + "    retr <path>     Retrieve a file, discarding its contents\n"
+            + "    <command>       Send any other command as is, such as CWD data or TYPE I\n"
+            + "    Lines starting with # are ignored.";
+    private static final String STEP_SEPARATOR = ";";
+    private static final String COMMENT = "#";
+    private static final String CONNECT = "CONNECT";
+    private static final String QUIT = "QUIT";
+    private static final String DEFAULT_USERNAME = "anonymous";
+    private static final String DEFAULT_PASSWORD = "load@localhost";
+    private static final long NANOS_PER_MICRO = 1000;
+    private static final int MEGABYTE = 1024 * 1024;
+    private static final long MIN_BACKOFF = TimeUnit.MILLISECONDS.toNanos( 10 );
+    private static final long MAX_BACKOFF = TimeUnit.SECONDS.toNanos( 1 );
+
+    // Private global variables
+    private String server;
+    private int port;
+    private List<String[]> script;
+    private Map<String, Histogram> latencies = new LinkedHashMap<>();
+    private Map<String, LongAdder> failures = new LinkedHashMap<>();
+    private LongAdder completeSessions = new LongAdder();
+    private LongAdder failedSessions = new LongAdder();
+    private LongAdder bytesReceived = new LongAdder();
+
+
+    /* Public Functions */
+
+
+    /**
+     * Parse command line arguments, run the load and display the report.
+     *
+     * @param args Command line arguments
+     */
+    public static void main( String[] args ) {
+
+        if ( args.length != 5 )
+            usage();
+
+        try {
+            int port = Integer.parseInt( args[1] );
+            int sessions = Integer.parseInt( args[2] );
+            long seconds = Long.parseLong( args[3] );
+            if ( sessions < 1 || seconds < 1 )
+                usage();
+
+            LoadGenerator generator = new LoadGenerator( args[0], port, readScript( args[4] ) );
+            long elapsed = generator.run( sessions, seconds );
+
+            System.out.println( "Ran " + sessions + " sessions against " + args[0] + ":" + port + " for "
+                    + String.format( "%.1f", elapsed / 1e9 ) + " s" );
+            for ( String line : generator.report( elapsed ) )
+                System.out.println( line );
+        } catch ( IllegalArgumentException e ) {
+            if ( !(e instanceof NumberFormatException) )
+                System.out.println( e.getMessage() );
+            usage();
+        } catch ( Exception e ) {
+            System.out.println( "Load generation failed: " + e );
+            System.exit( 1 );
+        }
+    }
+
+    /**
+     * Constructor for the LoadGenerator class.
+     * Every command of the script gets its latency histogram up front, so the report follows the script's order.
+     * Transfers are reported per command and path, since their latency depends on the size of what is sent.
+     *
+     * @param server FTP server to put load on
+     * @param port   Port number of the server
+     * @param script Steps of each session, each split into its keyword and optional argument
+     * @throws IllegalArgumentException If a step is missing its argument or has a malformed one
+     */
+    public LoadGenerator( String server, int port, List<String[]> script ) {
+        this.server = server;
+        this.port = port;
+        this.script = script;
+
+        addCommand( CONNECT );
+        for ( String[] step : script ) {
+            String label = label( step );
+            if ( label != null )
+                addCommand( label );
+        }
+        addCommand( QUIT );
+    }
+
+    /**
+     * Runs the given number of sessions at once until the time is up.
+     * Sessions which are running when the time is up finish their script.
+     * A session which cannot connect, or whose connection is dropped, waits before trying again,
+     * twice as long after every failure in a row, so a server which is down or full is not flooded with attempts.
+     *
+     * @param sessions Number of concurrent sessions
+     * @param seconds  Seconds to start new sessions for
+     * @return Elapsed nanoseconds, until the last session finished
+     * @throws InterruptedException If interrupted while waiting for the sessions
+     */
+    public long run( int sessions, long seconds ) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos( seconds );
+
+        Thread[] threads = new Thread[sessions];
+        for ( int i = 0; i < sessions; ++i ) {
+            threads[i] = new Thread( () -> {
+                long backoff = 0;
+                while ( System.nanoTime() - deadline < 0 ) {
+                    if ( runSession() )
+                        backoff = 0;
+                    else {
+                        backoff = Math.min( MAX_BACKOFF, Math.max( MIN_BACKOFF, backoff * 2 ) );
+                        LockSupport.parkNanos( Math.min( backoff, deadline - System.nanoTime() ) );
+                    }
+                }
+            }, "LoadGenerator" );
+            threads[i].start();
+        }
+
+        for ( Thread thread : threads )
+            thread.join();
+
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Gets the throughput of a run and the latency of each command in microseconds, one line each.
+     *
+     * @param elapsed Elapsed nanoseconds of the run
+     * @return Lines of the report
+     */
+    public List<String> report( long elapsed ) {
+        double seconds = elapsed / 1e9;
+        long commands = 0;
+        long failed = 0;
+        for ( String label : latencies.keySet() ) {
+            commands += latencies.get( label ).getCount();
+            failed += failures.get( label ).sum();
+        }
+
+        List<String> lines = new ArrayList<>();
+        lines.add( String.format( "Sessions: %d complete, %d failed, %.1f/s", completeSessions.sum(),
+                failedSessions.sum(), completeSessions.sum() / seconds ) );
+        lines.add( String.format( "Commands: %d complete, %d failed, %.1f/s", commands, failed, commands / seconds ) );
+        lines.add( String.format( "Data: %d bytes received, %.1f MB/s", bytesReceived.sum(),
+                bytesReceived.sum() / seconds / MEGABYTE ) );
+
+        lines.add( String.format( "%-28s %8s %8s %8s %8s %8s %8s %8s", "Latency (us)", "count", "failed", "mean",
+                "p50", "p99", "p999", "max" ) );
+        for ( Map.Entry<String, Histogram> command : latencies.entrySet() ) {
+            Histogram histogram = command.getValue();
+            lines.add( String.format( "%-28s %8d %8d %8d %8d %8d %8d %8d", command.getKey(), histogram.getCount(),
+                    failures.get( command.getKey() ).sum(), histogram.getMean() / NANOS_PER_MICRO,
+                    histogram.getPercentile( 0.5 ) / NANOS_PER_MICRO,
+                    histogram.getPercentile( 0.99 ) / NANOS_PER_MICRO,
+                    histogram.getPercentile( 0.999 ) / NANOS_PER_MICRO, histogram.getMax() / NANOS_PER_MICRO ) );
+        }
+
+        return lines;
+    }
+
+
+    /* Private Functions */
+
+
+    /**
+     * Connect to the server, run the script and quit.
+     * A failed step ends the session, since the steps after it usually depend on it.
+     *
+     * @return True if the server answered the whole session, even with failure replies,
+     *         false if the connection failed or was closed by the server
+     */
+    private boolean runSession() {
+        long start = System.nanoTime();
+        ServerProxy proxy;
+        try {
+            proxy = new ServerProxy( server, port );
+        } catch ( IOException e ) {
+            failures.get( CONNECT ).increment();
+            failedSessions.increment();
+            return false;
+        }
+        latencies.get( CONNECT ).record( System.nanoTime() - start );
+        proxy.changeQuietMode();
+
+        String label = CONNECT;
+        boolean complete = false;
+        boolean connected = true;
+        try {
+            for ( String[] step : script ) {
+                label = label( step );
+                if ( !runStep( proxy, step ) ) {
+                    failures.get( label ).increment();
+                    return true;
+                }
+            }
+
+            label = QUIT;
+            start = System.nanoTime();
+            proxy.quit();
+            latencies.get( QUIT ).record( System.nanoTime() - start );
+            complete = true;
+        } catch ( IOException e ) {
+            if ( label != null )
+                failures.get( label ).increment();
+            connected = false;
+        } finally {
+            if ( complete )
+                completeSessions.increment();
+            else
+                failedSessions.increment();
+
+            try {
+                proxy.close();
+            } catch ( IOException e ) {
+            }
+        }
+
+        return connected;
+    }
+
+    /**
+     * Run a single step of the script, recording its latency if it succeeds.
+     *
+     * @param proxy Session to run the step on
+     * @param step  Keyword and optional argument of the step
+     * @return True if the step succeeded, false otherwise
+     * @throws IOException If failed to read from or write to the server
+     */
+    private boolean runStep( ServerProxy proxy, String[] step ) throws IOException {
+        String keyword = step[0].toLowerCase();
+
+        // Steps which only change how the proxy opens data connections are not timed
+        if ( keyword.equals( "passive" ) || keyword.equals( "active" ) ) {
+            if ( proxy.getPassiveMode() != keyword.equals( "passive" ) )
+                proxy.changePassiveMode();
+            return true;
+        }
+
+        long start = System.nanoTime();
+        boolean succeeded;
+        switch ( keyword ) {
+            case "login":
+                String[] credentials = step.length > 1 ? step[1].split( " ", 2 ) : new String[0];
+                succeeded = proxy.login( credentials.length > 0 ? credentials[0] : DEFAULT_USERNAME,
+                        credentials.length > 1 ? credentials[1] : DEFAULT_PASSWORD );
+                break;
+
+            case "compress":
+                if ( !proxy.getCompressionMode() )
+                    proxy.changeCompressionMode( step.length > 1 ? Integer.parseInt( step[1] ) : -1 );
+                succeeded = proxy.getCompressionMode();
+                break;
+
+            case "list":
+            case "retr":
+                long received = proxy.discardTransfer( step.length > 1 ? keyword.toUpperCase() + " " + step[1]
+                        : keyword.toUpperCase() );
+                if ( received >= 0 )
+                    bytesReceived.add( received );
+                succeeded = received >= 0;
+                break;
+
+            default:
+                String reply = proxy.sendBatch( Collections.singletonList( String.join( " ", step ) ) ).get( 0 );
+                succeeded = reply.charAt( 0 ) >= '1' && reply.charAt( 0 ) <= '3';
+                break;
+        }
+
+        if ( succeeded )
+            latencies.get( label( step ) ).record( System.nanoTime() - start );
+        return succeeded;
+    }
+
+    /**
+     * Get the name a step's latency is reported under.
+     * Transfers are named by command and path, other commands by their verb alone.
+     *
+     * @param step Keyword and optional argument of the step
+     * @return Name of the step, or null for a step which is not timed
+     * @throws IllegalArgumentException If the step is missing its argument or has a malformed one
+     */
+    private static String label( String[] step ) {
+        switch ( step[0].toLowerCase() ) {
+            case "passive":
+            case "active":
+                return null;
+
+            case "login":
+                return "LOGIN";
+
+            case "compress":
+                if ( step.length > 1 )
+                    Integer.parseInt( step[1] );
+                return "MODE Z";
+
+            case "retr":
+                if ( step.length < 2 )
+                    throw new IllegalArgumentException( "retr needs the path of a file" );
+                return "RETR " + step[1];
+
+            case "list":
+                return step.length > 1 ? "LIST " + step[1] : "LIST";
+
+            default:
+                return step[0].toUpperCase();
+        }
+    }
+
+    /**
+     * Add a latency histogram and failure count for a command, unless it already has them.
+     *
+     * @param label Name of the command
+     */
+    private void addCommand( String label ) {
+        latencies.putIfAbsent( label, new Histogram() );
+        failures.putIfAbsent( label, new LongAdder() );
+    }
+
+    /**
+     * Read a script from a file, or from the argument itself if it does not name a file.
+     * Each step is split into its keyword and the rest of the line.
+     *
+     * @param argument Path of a script file, or steps separated by semicolons
+     * @return Steps of the script
+     * @throws IOException              If failed to read the script file
+     * @throws IllegalArgumentException If the script has no steps
+     */
+    private static List<String[]> readScript( String argument ) throws IOException {
+        Path file = Paths.get( argument );
+        List<String> lines = Files.isRegularFile( file ) ? Files.readAllLines( file )
+                : Arrays.asList( argument.split( STEP_SEPARATOR ) );
+
+        List<String[]> script = new ArrayList<>();
+        for ( String line : lines ) {
+            line = line.trim();
+            if ( !line.isEmpty() && !line.startsWith( COMMENT ) )
+                script.add( line.split( "\\s+", 2 ) );
+        }
+
+        if ( script.isEmpty() )
+            throw new IllegalArgumentException( "The script has no steps" );
+        return script;
+    }
+
+    /**
+     * Display a usage message to the console and close the program.
+     */
+    private static void usage() {
+        System.out.println( USAGE );
+        System.exit( 1 );
+    }
+
+}
@@ -0,0 +1,528 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Read only storage of files preloaded into byte arrays, for measuring the server without disk noise.
+ * Paths look exactly like the disk paths they were loaded from, so sessions resolve and list them the same way,
+ * while every stat, listing and read is served from the heap. Uploads are refused.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class MemoryStorage implements Storage {
+
+
+    // Private constants
+    private static final Logger LOGGER = Logger.getLogger( MemoryStorage.class.getName() );
+    private static final long MAX_FILE = Integer.MAX_VALUE - 8;
+    private static final int CHUNK = 64 * 1024;
+
+    // Private global variables
+    private Path root;
+    private Map<Path, Node> nodes = new ConcurrentHashMap<>();
+
+
+    /* Public Functions */
+
+
+    /**
+     * Constructor for the MemoryStorage class.
+     * Starts with an empty root directory.
+     *
+     * @param root Absolute path of the root directory, every file must be stored under it
+     */
+    public MemoryStorage( Path root ) {
+        this.root = root.toAbsolutePath().normalize();
+        nodes.put( this.root, new Node( null, FileTime.fromMillis( System.currentTimeMillis() ) ) );
+    }
+
+    /**
+     * Copies every directory and regular file under a directory on disk into a new memory storage.
+     * Entries which cannot be read, and files too large for a single array, are left out.
+     *
+     * @param root Directory to copy
+     * @return Storage holding a snapshot of the directory
+     * @throws IOException If failed to walk the directory
+     */
+    public static MemoryStorage load( Path root ) throws IOException {
+        MemoryStorage storage = new MemoryStorage( root );
+
+        try ( Stream<Path> paths = Files.walk( storage.root ) ) {
+            Iterator<Path> entries = paths.iterator();
+            while ( entries.hasNext() ) {
+                Path entry = entries.next();
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes( entry, BasicFileAttributes.class );
+                    if ( attributes.isDirectory() )
+                        storage.add( entry, null, attributes.lastModifiedTime() );
+                    else if ( attributes.isRegularFile() && attributes.size() > MAX_FILE )
+                        LOGGER.warning( "Skipping " + entry + ", files over " + MAX_FILE + " bytes cannot be held in memory" );
+                    else if ( attributes.isRegularFile() )
+                        storage.add( entry, Files.readAllBytes( entry ), attributes.lastModifiedTime() );
+                } catch ( IOException e ) {
+                }
+            }
+        }
+
+        return storage;
+    }
+
+    /**
+     * Stores a file, creating its missing parent directories.
+     * Files must be stored before the server starts serving them.
+     *
+     * @param file Path of the file under the root
+     * @param data Contents of the file, kept without copying
+     * @throws IllegalArgumentException If the path is not under the root or names a directory
+     */
+    public void put( Path file, byte[] data ) {
+        add( file, data, FileTime.fromMillis( System.currentTimeMillis() ) );
+    }
+
+    /**
+     * Gets the number of bytes held by the stored files.
+     *
+     * @return Total size of the files
+     */
+    public long getSize() {
+        long size = 0;
+        for ( Node node : nodes.values() )
+            size += node.size();
+
+        return size;
+    }
+
+    /**
+     * Gets whether the path is a stored directory.
+     *
+     * @param path Path to check
+     * @return True if the path is a directory, false otherwise
+     */
+    @Override
+    public boolean isDirectory( Path path ) {
+        Node node = nodes.get( path );
+        return node != null && node.isDirectory();
+    }
+
+    /**
+     * Gets whether the path is stored, everything stored may be read.
+     *
+     * @param path Path to check
+     * @return True if the path exists, false otherwise
+     */
+    @Override
+    public boolean isReadable( Path path ) {
+        return nodes.containsKey( path );
+    }
+
+    /**
+     * Gets whether uploads must be refused, which they always are.
+     *
+     * @return true
+     */
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    /**
+     * Gets whether the channels of opened files can be memory mapped, which stored arrays never can.
+     *
+     * @return false
+     */
+    @Override
+    public boolean isMappable() {
+        return false;
+    }
+
+    /**
+     * Resolves a path to its real path, which is the normalized path itself as nothing is linked.
+     *
+     * @param path Path to resolve
+     * @return Real path
+     * @throws NoSuchFileException If the path is not stored
+     */
+    @Override
+    public Path toRealPath( Path path ) throws IOException {
+        Path real = path.toAbsolutePath().normalize();
+        node( real );
+        return real;
+    }
+
+    /**
+     * Reads the attributes of a stored file or directory.
+     *
+     * @param path Path of the file or directory
+     * @return Attributes of the path
+     * @throws NoSuchFileException If the path is not stored
+     */
+    @Override
+    public BasicFileAttributes readAttributes( Path path ) throws IOException {
+        return node( path );
+    }
+
+    /**
+     * Opens a stored directory to iterate over its entries in name order.
+     *
+     * @param directory Path of the directory
+     * @return Stream of the directory's entries
+     * @throws NoSuchFileException   If the path is not stored
+     * @throws NotDirectoryException If the path is a file
+     */
+    @Override
+    public DirectoryStream<Path> newDirectoryStream( Path directory ) throws IOException {
+        Node node = node( directory );
+        if ( !node.isDirectory() )
+            throw new NotDirectoryException( directory.toString() );
+
+        List<Path> entries;
+        synchronized ( node ) {
+            entries = new ArrayList<>( node.children.values() );
+        }
+
+        return new DirectoryStream<Path>() {
+            @Override
+            public Iterator<Path> iterator() {
+                return entries.iterator();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Opens a stored file for reading.
+     *
+     * @param file Path of the file
+     * @return Channel reading the file's array
+     * @throws NoSuchFileException   If the path is not stored
+     * @throws FileNotFoundException If the path is a directory
+     */
+    @Override
+    public FileChannel open( Path file ) throws IOException {
+        Node node = node( file );
+        if ( !node.isRegularFile() )
+            throw new FileNotFoundException( file.toString() );
+
+        return new ArrayChannel( node.data );
+    }
+
+
+    /* Private Functions */
+
+
+    /**
+     * Look up a stored path.
+     *
+     * @param path Path to look up
+     * @return Node of the path
+     * @throws NoSuchFileException If the path is not stored
+     */
+    private Node node( Path path ) throws NoSuchFileException {
+        Node node = nodes.get( path );
+        if ( node == null )
+            throw new NoSuchFileException( path.toString() );
+
+        return node;
+    }
+
+    /**
+     * Store a file or directory, creating its missing parent directories.
+     *
+     * @param path     Path under the root
+     * @param data     Contents of a file, or null for a directory
+     * @param modified Modification time of the entry
+     * @throws IllegalArgumentException If the path is not under the root or a file is stored over a directory
+     */
+    private void add( Path path, byte[] data, FileTime modified ) {
+        path = path.toAbsolutePath().normalize();
+        if ( !path.startsWith( root ) )
+            throw new IllegalArgumentException( path + " is not under " + root );
+
+        Node existing = nodes.get( path );
+        if ( existing != null && existing.isDirectory() ) {
+            if ( data != null )
+                throw new IllegalArgumentException( path + " is a directory" );
+            return;
+        }
+
+        if ( !path.equals( root ) ) {
+            Path parent = path.getParent();
+            add( parent, null, modified );
+
+            Node directory = nodes.get( parent );
+            if ( !directory.isDirectory() )
+                throw new IllegalArgumentException( parent + " is a file" );
+            synchronized ( directory ) {
+                directory.children.put( path.getFileName().toString(), path );
+            }
+        }
+
+        nodes.put( path, new Node( data, modified ) );
+    }
+
+
+    /**
+     * A stored file or directory, which is its own set of attributes.
+     */
+    private static class Node implements BasicFileAttributes {
+
+
+        // Private global variables
+        private byte[] data;
+        private Map<String, Path> children;
+        private FileTime modified;
+
+
+        /**
+         * Constructor for the Node class.
+         *
+         * @param data     Contents of a file, or null for a directory
+         * @param modified Modification time of the entry
+         */
+        private Node( byte[] data, FileTime modified ) {
+            this.data = data;
+            this.modified = modified;
+            if ( data == null )
+                children = new TreeMap<>();
+        }
+
+        @Override
+        public FileTime lastModifiedTime() {
+            return modified;
+        }
+
+        @Override
+        public FileTime lastAccessTime() {
+            return modified;
+        }
+
+        @Override
+        public FileTime creationTime() {
+            return modified;
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return data != null;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return data == null;
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return false;
+        }
+
+        @Override
+        public boolean isOther() {
+            return false;
+        }
+
+        @Override
+        public long size() {
+            return data == null ? 0 : data.length;
+        }
+
+        @Override
+        public Object fileKey() {
+            return null;
+        }
+    }
+
+
+    /**
+     * Read only FileChannel over a stored file's array.
+     * Positional reads and transfers never touch the channel's position, so transfers may share the channel.
+     * Transfers write at most a chunk at a time, since a socket copies every heap buffer written to it
+     * into a temporary direct buffer of the same size.
+     * The channel cannot be mapped, which the storage reports through isMappable. Locks are always granted,
+     * since nothing can write a stored file, and as on any read only channel only shared locks may be taken.
+     */
+    private static class ArrayChannel extends FileChannel {
+
+
+        // Private global variables
+        private byte[] data;
+        private long position = 0;
+
+
+        /**
+         * Constructor for the ArrayChannel class.
+         *
+         * @param data Contents of the file
+         */
+        private ArrayChannel( byte[] data ) {
+            this.data = data;
+        }
+
+        @Override
+        public int read( ByteBuffer target, long position ) {
+            if ( position >= data.length )
+                return target.hasRemaining() ? -1 : 0;
+
+            int length = (int) Math.min( target.remaining(), data.length - position );
+            target.put( data, (int) position, length );
+            return length;
+        }
+
+        @Override
+        public synchronized int read( ByteBuffer target ) {
+            int readBytes = read( target, position );
+            if ( readBytes > 0 )
+                position += readBytes;
+
+            return readBytes;
+        }
+
+        @Override
+        public synchronized long read( ByteBuffer[] targets, int offset, int length ) {
+            long total = 0;
+            for ( int i = offset; i < offset + length; ++i ) {
+                int readBytes = read( targets[i] );
+                if ( readBytes == -1 )
+                    return total == 0 ? -1 : total;
+                total += readBytes;
+            }
+
+            return total;
+        }
+
+        @Override
+        public long transferTo( long position, long count, WritableByteChannel target ) throws IOException {
+            if ( position >= data.length )
+                return 0;
+
+            int length = (int) Math.min( Math.min( count, CHUNK ), data.length - position );
+            return target.write( ByteBuffer.wrap( data, (int) position, length ) );
+        }
+
+        @Override
+        public synchronized long position() {
+            return position;
+        }
+
+        @Override
+        public synchronized FileChannel position( long position ) {
+            this.position = position;
+            return this;
+        }
+
+        @Override
+        public long size() {
+            return data.length;
+        }
+
+        @Override
+        public void force( boolean metaData ) {
+        }
+
+        @Override
+        public int write( ByteBuffer source ) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public long write( ByteBuffer[] sources, int offset, int length ) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public int write( ByteBuffer source, long position ) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public FileChannel truncate( long size ) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public long transferFrom( ReadableByteChannel source, long position, long count ) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public MappedByteBuffer map( MapMode mode, long position, long size ) {
+            throw new UnsupportedOperationException( "Stored files cannot be mapped" );
+        }
+
+        @Override
+        public FileLock lock( long position, long size, boolean shared ) {
+            return tryLock( position, size, shared );
+        }
+
+        @Override
+        public FileLock tryLock( long position, long size, boolean shared ) {
+            if ( !shared )
+                throw new NonWritableChannelException();
+
+            return new StoredLock( this, position, size );
+        }
+
+        @Override
+        protected void implCloseChannel() {
+        }
+    }
+
+
+    /**
+     * Shared lock on a stored file, which only has to track whether it was released.
+     */
+    private static class StoredLock extends FileLock {
+
+
+        // Private global variables
+        private volatile boolean valid = true;
+
+
+        /**
+         * Constructor for the StoredLock class.
+         *
+         * @param channel  Channel of the locked file
+         * @param position Offset of the locked region
+         * @param size     Length of the locked region
+         */
+        private StoredLock( FileChannel channel, long position, long size ) {
+            super( channel, position, size, true );
+        }
+
+        @Override
+        public boolean isValid() {
+            return valid && channel().isOpen();
+        }
+
+        @Override
+        public void release() {
+            valid = false;
+        }
+    }
+
+}
@@ -0,0 +1,463 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking FTP server engine which multiplexes every control connection on a single selector thread.
+ * CRLF terminated commands are parsed by a worker straight from each connection's ByteBuffer,
+ * so idle clients hold no thread while they wait between commands.
+ * A connection is not read while a worker owns its buffer, which also stops a pipelining client from queueing
+ * more commands than the server keeps up with.
+ * Commands of one session always run one at a time and in the order they were received,
+ * and the replies to the commands of one read are flushed together.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class NioServer {
+
+
+    // Private constants
+    private static final Logger LOGGER = Logger.getLogger( NioServer.class.getName() );
+
+    // Private global variables
+    private Selector selector;
+    private ServerSocketChannel server;
+    private SelectionKey acceptKey;
+    private ServerContext context;
+    private ExecutorService workers;
+    private int maxSessions;
+    private int openSessions = 0;
+    private Queue<Session> pendingWrites = new ConcurrentLinkedQueue<>();
+    private Queue<Session> pendingReads = new ConcurrentLinkedQueue<>();
+
+
+    /* Public Functions */
+
+
+    /**
+     * Constructor for the NioServer class.
+     * Binds the server's listening channel and registers it with the selector.
+     *
+     * @param port    Port number to accept clients on
+     * @param context Server wide configuration and resources
+     * @param workers Executor to run the commands of each session on
+     * @throws IOException If failed to open the selector or bind the port
+     */
+    public NioServer( int port, ServerContext context, ExecutorService workers ) throws IOException {
+        selector = Selector.open();
+
+        server = ServerSocketChannel.open();
+        server.bind( new InetSocketAddress( port ) );
+        server.configureBlocking( false );
+        acceptKey = server.register( selector, SelectionKey.OP_ACCEPT );
+
+        this.context = context;
+        this.workers = workers;
+        maxSessions = context.getMaxSessions();
+    }
+
+    /**
+     * Run the selector loop forever.
+     * Accepts clients, reads their commands and writes queued responses.
+     * Idle sessions are timed out by the server's timing wheel.
+     */
+    public void run() {
+        while ( true ) {
+            try {
+                selector.select();
+
+                // Start writing responses queued by the workers
+                Session pending;
+                while ( (pending = pendingWrites.poll()) != null )
+                    pending.enableWrite();
+
+                // Resume reading sessions whose buffered commands have been handled
+                while ( (pending = pendingReads.poll()) != null )
+                    pending.enableRead();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while ( keys.hasNext() ) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if ( !key.isValid() )
+                        continue;
+
+                    if ( key == acceptKey ) {
+                        accept();
+                        continue;
+                    }
+
+                    Session session = (Session) key.attachment();
+                    try {
+                        if ( key.isReadable() )
+                            session.read();
+                        if ( key.isValid() && key.isWritable() )
+                            session.write();
+                    } catch ( IOException e ) {
+                        session.close();
+                    }
+                }
+            } catch ( IOException e ) {
+            }
+        }
+    }
+
+
+    /* Private Functions */
+
+
+    /**
+     * Accept a connecting client and welcome it.
+     * Stops accepting once the maximum number of sessions is open.
+     *
+     * @throws IOException If failed to accept or register the client
+     */
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if ( channel == null ) return;
+
+        channel.configureBlocking( false );
+        channel.setOption( StandardSocketOptions.TCP_NODELAY, true );
+        Session session = new Session( channel );
+        session.key = channel.register( selector, SelectionKey.OP_READ, session );
+        session.resetIdleTimeout();
+        session.submit( () -> {
+            session.proxy.welcome();
+            session.proxy.flushReplies();
+        } );
+        context.getMetrics().sessionOpened();
+
+        if ( ++openSessions >= maxSessions )
+            acceptKey.interestOps( 0 );
+    }
+
+    /**
+     * A handler task run on a worker for a session.
+     */
+    private interface Task {
+
+        /**
+         * Run the task.
+         *
+         * @throws IOException If failed to communicate with the client
+         */
+        void run() throws IOException;
+    }
+
+
+    /**
+     * A single client's control connection.
+     * Reading and writing happen on the selector thread, command handling on a worker.
+     */
+    private class Session {
+
+
+        // Private global variables
+        private SocketChannel channel;
+        private SelectionKey key;
+        private ClientProxy proxy;
+        private ByteBuffer input = ByteBuffer.allocate( CommandReader.COMMAND_BUFFER );
+        private int scanned = 0;
+        private boolean reading = true;
+        private boolean discarding = false;
+        private CommandLine command = new CommandLine();
+        private Queue<ByteBuffer> output = new ConcurrentLinkedQueue<>();
+        private Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+        private AtomicBoolean scheduled = new AtomicBoolean( false );
+        private volatile boolean closing = false;
+        private TimingWheel.Timeout idle;
+        private boolean closed = false;
+
+
+        /**
+         * Constructor for the Session class.
+         *
+         * @param channel Control connection to the client
+         */
+        private Session( SocketChannel channel ) {
+            this.channel = channel;
+            proxy = new ClientProxy( null, new ReplyWriter(), channel.socket().getLocalAddress(),
+                    channel.socket().getInetAddress(), context );
+            proxy.setCoalescing( true );
+        }
+
+        /**
+         * Read available bytes from the client.
+         * Once the buffer holds a complete command line or is full, reading stops and a worker takes the buffer over.
+         *
+         * @throws IOException If failed to read from the client
+         */
+        private void read() throws IOException {
+            if ( channel.read( input ) == -1 ) {
+                close();
+                return;
+            }
+
+            resetIdleTimeout();
+
+            // Only the newly read bytes need to be searched for a line terminator
+            boolean complete = !input.hasRemaining();
+            for ( ; scanned < input.position() && !complete; ++scanned )
+                complete = input.get( scanned ) == '\n';
+
+            if ( complete ) {
+                reading = false;
+                key.interestOps( key.interestOps() & ~SelectionKey.OP_READ );
+                submit( this::process );
+            }
+        }
+
+        /**
+         * Run every complete command line in the buffer, followed by a flush of the replies to the whole batch,
+         * then hand the buffer back to the selector thread.
+         * A line too long to ever fit in the buffer is answered once and discarded up to its line terminator.
+         *
+         * @throws IOException If failed to communicate with the client
+         */
+        private void process() throws IOException {
+            // Split the buffered bytes into CRLF terminated commands
+            byte[] bytes = input.array();
+            int start = 0;
+            for ( int i = 0; i < input.position(); ++i ) {
+                if ( bytes[i] == '\n' ) {
+                    int end = (i > start && bytes[i - 1] == '\r') ? i - 1 : i;
+                    if ( discarding )
+                        discarding = false;
+                    else
+                        handle( bytes, start, end );
+                    start = i + 1;
+                }
+            }
+
+            if ( start == 0 && !input.hasRemaining() ) {
+                if ( !discarding && !closing )
+                    proxy.commandTooLong();
+                discarding = true;
+                start = input.position();
+            }
+
+            // Keep any partial command for the next read
+            input.flip();
+            input.position( start );
+            input.compact();
+            scanned = input.position();
+
+            // Reply to every command of the batch in one write
+            proxy.flushReplies();
+
+            pendingReads.add( this );
+            selector.wakeup();
+        }
+
+        /**
+         * Run a single command on the session's proxy.
+         * Commands before login complete are part of the login exchange.
+         *
+         * @param bytes Bytes holding the command line received from the client
+         * @param start Index of the line's first byte
+         * @param end   Index after the line's last byte, excluding its line terminator
+         * @throws IOException If failed to communicate with the client
+         */
+        private void handle( byte[] bytes, int start, int end ) throws IOException {
+            if ( closing ) return;
+
+            boolean open;
+            if ( proxy.isLoggedIn() )
+                open = CommandDispatcher.dispatch( proxy, command.set( bytes, start, end ) );
+            else
+                open = proxy.login( new String( bytes, start, end - start, StandardCharsets.UTF_8 ) );
+
+            if ( !open )
+                finish();
+        }
+
+        /**
+         * Queue a task and make sure a worker is draining the session's queue.
+         *
+         * @param task Task to run after every previously submitted task
+         */
+        private void submit( Task task ) {
+            tasks.add( task );
+            if ( scheduled.compareAndSet( false, true ) )
+                workers.execute( this::drain );
+        }
+
+        /**
+         * Run queued tasks in order until the queue is empty.
+         */
+        private void drain() {
+            do {
+                Task task;
+                while ( (task = tasks.poll()) != null ) {
+                    try {
+                        task.run();
+                    } catch ( IOException e ) {
+                        // Clients which drop their connection are not an error of the server
+                        LOGGER.log( Level.FINE, "Session with " + channel.socket().getRemoteSocketAddress() + " closed", e );
+                        finish();
+                    } catch ( Exception e ) {
+                        context.getMetrics().recordError();
+                        LOGGER.log( Level.WARNING, "Session with " + channel.socket().getRemoteSocketAddress() + " failed", e );
+                        finish();
+                    }
+                }
+
+                scheduled.set( false );
+            } while ( !tasks.isEmpty() && scheduled.compareAndSet( false, true ) );
+        }
+
+        /**
+         * Restart the session's idle timeout, cancelling the pending one.
+         * Called by the selector thread on every read and by the timing wheel while a command is running.
+         */
+        private synchronized void resetIdleTimeout() {
+            if ( idle != null )
+                idle.cancel();
+
+            idle = context.getTimers().schedule( context.getIdleTimeout(), this::expire );
+        }
+
+        /**
+         * Send a timeout to the idle session and close it.
+         * Sessions with a command still running, such as a long transfer, are never idle and get a new timeout instead.
+         */
+        private void expire() {
+            if ( closing ) return;
+
+            if ( scheduled.get() )
+                resetIdleTimeout();
+            else
+                submit( () -> {
+                    proxy.timeout();
+                    finish();
+                } );
+        }
+
+        /**
+         * Close the session once every queued response has been written.
+         */
+        private void finish() {
+            closing = true;
+            requestWrite();
+        }
+
+        /**
+         * Ask the selector thread to write the session's queued responses.
+         */
+        private void requestWrite() {
+            pendingWrites.add( this );
+            selector.wakeup();
+        }
+
+        /**
+         * Register interest in writing the queued responses.
+         */
+        private void enableWrite() {
+            if ( key.isValid() )
+                key.interestOps( key.interestOps() | SelectionKey.OP_WRITE );
+        }
+
+        /**
+         * Register interest in reading again once a worker has handed the buffer back.
+         */
+        private void enableRead() {
+            if ( !key.isValid() || closing ) return;
+
+            reading = true;
+            key.interestOps( key.interestOps() | SelectionKey.OP_READ );
+        }
+
+        /**
+         * Write as many queued responses as the client's socket accepts.
+         *
+         * @throws IOException If failed to write to the client
+         */
+        private void write() throws IOException {
+            ByteBuffer buffer;
+            while ( (buffer = output.peek()) != null ) {
+                channel.write( buffer );
+                if ( buffer.hasRemaining() ) return;
+
+                output.poll();
+            }
+
+            if ( closing )
+                close();
+            else
+                key.interestOps( reading ? SelectionKey.OP_READ : 0 );
+        }
+
+        /**
+         * Close the control connection and release the session's resources.
+         */
+        private void close() {
+            if ( closed ) return;
+            closed = true;
+            closing = true;
+
+            key.cancel();
+            synchronized ( this ) {
+                idle.cancel();
+            }
+            try {
+                channel.close();
+            } catch ( IOException e ) {
+            }
+
+            submit( proxy::close );
+            context.getMetrics().sessionClosed();
+
+            if ( openSessions-- >= maxSessions && acceptKey.isValid() )
+                acceptKey.interestOps( SelectionKey.OP_ACCEPT );
+        }
+
+
+        /**
+         * Writer which queues the proxy's responses for the selector thread.
+         */
+        private class ReplyWriter extends Writer {
+
+
+            // Private global variables
+            private StringBuilder pending = new StringBuilder();
+
+
+            @Override
+            public void write( char[] buffer, int offset, int length ) {
+                pending.append( buffer, offset, length );
+            }
+
+            @Override
+            public void flush() {
+                if ( pending.length() == 0 ) return;
+
+                output.add( StandardCharsets.UTF_8.encode( CharBuffer.wrap( pending ) ) );
+                pending.setLength( 0 );
+                requestWrite();
+            }
+
+            @Override
+            public void close() {
+                flush();
+            }
+        }
+    }
+
+}
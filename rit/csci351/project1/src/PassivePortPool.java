@@ -0,0 +1,211 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of pre-bound listening ports for passive mode data connections.
+ * A PASV leases an already listening port and returns it once the transfer is done,
+ * so no port is bound per transfer and the number of ports in use stays within the configured range.
+ * Without a configured range every lease binds a random port, as the server always did.
+ * Idle ports keep listening, so connections which arrive between leases are refused when a port is leased,
+ * and a leased port only accepts connections from the host of the session it was leased to.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class PassivePortPool {
+
+
+    // Private global variables
+    private Queue<ServerSocketChannel> idle = new ConcurrentLinkedQueue<>();
+    private AtomicInteger leased = new AtomicInteger();
+    private int acceptTimeout;
+    private TimingWheel timers;
+    private boolean pooled;
+    private AtomicInteger size = new AtomicInteger();
+
+
+    /* Public Functions */
+
+
+    /**
+     * Constructor for the PassivePortPool class.
+     * Binds every port of the given range which is not already in use.
+     *
+     * @param first         First port of the range, or 0 for no pool
+     * @param last          Last port of the range
+     * @param acceptTimeout Milliseconds to wait for the client to connect to a leased port
+     * @param timers        Timing wheel which enforces the accept timeout
+     */
+    public PassivePortPool( int first, int last, int acceptTimeout, TimingWheel timers ) {
+        this.acceptTimeout = acceptTimeout;
+        this.timers = timers;
+        pooled = first > 0;
+
+        if ( !pooled ) return;
+
+        for ( int port = first; port <= last; ++port ) {
+            try {
+                idle.add( bind( port ) );
+                size.incrementAndGet();
+            } catch ( IOException e ) {
+            }
+        }
+    }
+
+    /**
+     * Leases a listening port.
+     * Connections which arrived while the port was idle are refused first.
+     *
+     * @return Listening channel, or null if every port of the pool is leased
+     * @throws IOException If failed to bind a random port when no pool is configured
+     */
+    public ServerSocketChannel lease() throws IOException {
+        ServerSocketChannel listener;
+        if ( !pooled )
+            listener = bind( 0 );
+        else {
+            while ( (listener = idle.poll()) != null ) {
+                try {
+                    refuseStale( listener );
+                    break;
+                } catch ( IOException e ) {
+                    close( listener );
+                    size.decrementAndGet();
+                }
+            }
+        }
+
+        if ( listener != null )
+            leased.incrementAndGet();
+
+        return listener;
+    }
+
+    /**
+     * Waits for the client to connect to a leased port.
+     * Connections from any other host are closed, and the port keeps waiting for the client.
+     * A port whose client does not connect within the accept timeout is closed by the timing wheel,
+     * and bound again when it is released.
+     *
+     * @param listener Leased listening channel
+     * @param client   Address of the host the session's control connection comes from
+     * @return Blocking channel connected to the client
+     * @throws IOException If failed to accept the connection, or the client did not connect within the accept timeout
+     */
+    public SocketChannel accept( ServerSocketChannel listener, InetAddress client ) throws IOException {
+        TimingWheel.Timeout deadline = timers.schedule( acceptTimeout, () -> close( listener ) );
+        try {
+            while ( true ) {
+                SocketChannel channel = listener.accept();
+                InetSocketAddress peer = (InetSocketAddress) channel.getRemoteAddress();
+                if ( peer != null && client.equals( peer.getAddress() ) )
+                    return channel;
+
+                channel.close();
+            }
+        } finally {
+            deadline.cancel();
+        }
+    }
+
+    /**
+     * Returns a leased port to the pool.
+     * Any connection which arrived after the transfer is refused before the port is leased again.
+     *
+     * @param listener Leased listening channel
+     */
+    public void release( ServerSocketChannel listener ) {
+        leased.decrementAndGet();
+
+        if ( !pooled ) {
+            close( listener );
+            return;
+        }
+
+        int port = listener.socket().getLocalPort();
+        try {
+            if ( listener.isOpen() )
+                refuseStale( listener );
+            else
+                listener = bind( port );
+
+            idle.add( listener );
+        } catch ( IOException e ) {
+            close( listener );
+            size.decrementAndGet();
+        }
+    }
+
+    /**
+     * Gets the number of ports currently leased to sessions.
+     *
+     * @return Number of leased ports
+     */
+    public int getLeased() {
+        return leased.get();
+    }
+
+    /**
+     * Gets the number of ports managed by the pool.
+     *
+     * @return Number of pooled ports, or 0 if no pool is configured
+     */
+    public int getSize() {
+        return size.get();
+    }
+
+
+    /* Private Functions */
+
+
+    /**
+     * Binds a listening channel to the given port.
+     *
+     * @param port Port number, or 0 for a random port
+     * @return Listening channel
+     * @throws IOException If failed to bind the port
+     */
+    private static ServerSocketChannel bind( int port ) throws IOException {
+        ServerSocketChannel listener = ServerSocketChannel.open();
+        try {
+            listener.bind( new InetSocketAddress( port ) );
+        } catch ( IOException e ) {
+            listener.close();
+            throw e;
+        }
+        return listener;
+    }
+
+    /**
+     * Closes every connection waiting in a listening channel's backlog.
+     *
+     * @param listener Listening channel
+     * @throws IOException If failed to accept from the channel
+     */
+    private static void refuseStale( ServerSocketChannel listener ) throws IOException {
+        listener.configureBlocking( false );
+        SocketChannel stale;
+        while ( (stale = listener.accept()) != null )
+            stale.close();
+        listener.configureBlocking( true );
+    }
+
+    /**
+     * Quietly closes the given channel.
+     *
+     * @param listener Channel to close
+     */
+    private static void close( ServerSocketChannel listener ) {
+        try {
+            listener.close();
+        } catch ( IOException e ) {
+        }
+    }
+
+}
@@ -0,0 +1,288 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Sends files from slow storage through a pipeline of asynchronous reads.
+ * Up to depth chunks of the file are read at once into buffers leased from the pool,
+ * and while the oldest chunk is written to the data connection the following ones are still being read,
+ * so a transfer waits on the disk's latency once per depth chunks instead of once per chunk.
+ * Files are read through the channels the server's storage already opened, with positional reads on a shared
+ * pool of reader threads, so reading ahead neither opens the file again nor bypasses the storage.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class ReadAhead {
+
+
+    // Public constants
+    public static final int CHUNK = 256 * 1024;
+
+    // Private global variables
+    private int depth;
+    private BufferPool buffers;
+    private ExecutorService readers;
+
+
+    /* Public Functions */
+
+
+    /**
+     * Constructor for the ReadAhead class.
+     * Reads of every transfer share a pool of depth threads per processor.
+     *
+     * @param depth   Number of chunks to read ahead of the one being sent
+     * @param buffers Pool to lease the chunk buffers from
+     */
+    public ReadAhead( int depth, BufferPool buffers ) {
+        this.depth = Math.max( 1, depth );
+        this.buffers = buffers;
+
+        readers = Executors.newFixedThreadPool( this.depth * Runtime.getRuntime().availableProcessors(), task -> {
+            Thread thread = new Thread( task, "ReadAhead" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+    }
+
+    /**
+     * Adapts an open file for reading through the pipeline's reader threads.
+     * Closing the returned channel leaves the file open for its owner.
+     *
+     * @param file Channel of the file, only read with positional reads
+     * @return Read only channel reading the file
+     */
+    public AsynchronousFileChannel open( FileChannel file ) {
+        return new PooledChannel( file, readers );
+    }
+
+    /**
+     * Sends the given range of the file, reading ahead of what has been sent.
+     *
+     * @param file      File to send
+     * @param position  Offset of the first byte to send
+     * @param end       Offset after the last byte to send, capped at the end of the file
+     * @param target    Channel to send the bytes to
+     * @param bandwidth Bandwidth limit to charge the sent bytes to, or null for none
+     * @return Number of bytes sent
+     * @throws IOException If failed to read the file or write to the target
+     */
+    public long send( AsynchronousFileChannel file, long position, long end, WritableByteChannel target,
+                      TokenBucket bandwidth ) throws IOException {
+        end = Math.min( end, file.size() );
+
+        ByteBuffer[] chunks = new ByteBuffer[depth];
+        long[] offsets = new long[depth];
+        @SuppressWarnings( "unchecked" )
+        Future<Integer>[] reads = (Future<Integer>[]) new Future<?>[depth];
+
+        // Start reading the first chunks, each slot then moves depth chunks ahead once it is sent
+        long next = position;
+        for ( int slot = 0; slot < depth && next < end; ++slot, next += CHUNK ) {
+            chunks[slot] = buffers.acquire( CHUNK );
+            offsets[slot] = next;
+            reads[slot] = read( file, chunks[slot], next, end );
+        }
+
+        long sent = 0;
+        try {
+            for ( int slot = 0; reads[slot] != null; slot = (slot + 1) % depth ) {
+                ByteBuffer chunk = chunks[slot];
+
+                // Finish a short read before sending, stopping if the file was truncated
+                int readBytes = await( reads[slot] );
+                reads[slot] = null;
+                while ( readBytes > 0 && chunk.hasRemaining() )
+                    readBytes = await( read( file, chunk, offsets[slot] + chunk.position(), end ) );
+                if ( chunk.position() == 0 )
+                    break;
+
+                chunk.flip();
+                int length = chunk.remaining();
+                while ( chunk.hasRemaining() )
+                    target.write( chunk );
+
+                sent += length;
+                if ( bandwidth != null )
+                    bandwidth.acquire( length );
+                if ( length < CHUNK && offsets[slot] + length < end )
+                    break;
+
+                if ( next < end ) {
+                    chunk.clear();
+                    offsets[slot] = next;
+                    reads[slot] = read( file, chunk, next, end );
+                    next += CHUNK;
+                }
+            }
+        } finally {
+            // Reads still running write into their buffers, so wait for them before giving the buffers back
+            for ( int slot = 0; slot < depth; ++slot ) {
+                if ( reads[slot] != null ) {
+                    try {
+                        await( reads[slot] );
+                    } catch ( IOException e ) {
+                    }
+                }
+                buffers.release( chunks[slot] );
+            }
+        }
+
+        return sent;
+    }
+
+
+    /* Private Functions */
+
+
+    /**
+     * Start reading a chunk, limited to the end of the range.
+     *
+     * @param file     File to read
+     * @param chunk    Buffer to read into, from its position
+     * @param position Offset in the file of the buffer's position
+     * @param end      Offset after the last byte of the range
+     * @return Pending read, giving the number of bytes read or -1 at the end of the file
+     */
+    private static Future<Integer> read( AsynchronousFileChannel file, ByteBuffer chunk, long position, long end ) {
+        chunk.limit( (int) Math.min( CHUNK, chunk.position() + end - position ) );
+        return file.read( chunk, position );
+    }
+
+    /**
+     * Wait for a read to complete.
+     *
+     * @param read Pending read
+     * @return Number of bytes read, or -1 at the end of the file
+     * @throws IOException If the read failed or the thread was interrupted
+     */
+    private static int await( Future<Integer> read ) throws IOException {
+        try {
+            return read.get();
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted while reading ahead", e );
+        } catch ( ExecutionException e ) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException( e.getCause() );
+        }
+    }
+
+
+    /**
+     * Read only asynchronous view of a file channel, whose reads run on the pipeline's reader threads.
+     */
+    private static class PooledChannel extends AsynchronousFileChannel {
+
+
+        // Private global variables
+        private FileChannel file;
+        private ExecutorService readers;
+        private volatile boolean open = true;
+
+
+        /**
+         * Constructor for the PooledChannel class.
+         *
+         * @param file    Channel of the file, left open when this one is closed
+         * @param readers Threads to run the reads on
+         */
+        private PooledChannel( FileChannel file, ExecutorService readers ) {
+            this.file = file;
+            this.readers = readers;
+        }
+
+        @Override
+        public Future<Integer> read( ByteBuffer target, long position ) {
+            return readers.submit( () -> {
+                if ( !open )
+                    throw new ClosedChannelException();
+                return file.read( target, position );
+            } );
+        }
+
+        @Override
+        public <A> void read( ByteBuffer target, long position, A attachment,
+                              CompletionHandler<Integer, ? super A> handler ) {
+            readers.execute( () -> {
+                try {
+                    if ( !open )
+                        throw new ClosedChannelException();
+                    handler.completed( file.read( target, position ), attachment );
+                } catch ( IOException | RuntimeException e ) {
+                    handler.failed( e, attachment );
+                }
+            } );
+        }
+
+        @Override
+        public long size() throws IOException {
+            if ( !open )
+                throw new ClosedChannelException();
+            return file.size();
+        }
+
+        @Override
+        public AsynchronousFileChannel truncate( long size ) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public void force( boolean metaData ) {
+        }
+
+        @Override
+        public <A> void lock( long position, long size, boolean shared, A attachment,
+                              CompletionHandler<FileLock, ? super A> handler ) {
+            readers.execute( () -> {
+                try {
+                    handler.completed( file.lock( position, size, shared ), attachment );
+                } catch ( IOException | RuntimeException e ) {
+                    handler.failed( e, attachment );
+                }
+            } );
+        }
+
+        @Override
+        public Future<FileLock> lock( long position, long size, boolean shared ) {
+            return readers.submit( () -> file.lock( position, size, shared ) );
+        }
+
+        @Override
+        public FileLock tryLock( long position, long size, boolean shared ) throws IOException {
+            return file.tryLock( position, size, shared );
+        }
+
+        @Override
+        public <A> void write( ByteBuffer source, long position, A attachment,
+                               CompletionHandler<Integer, ? super A> handler ) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public Future<Integer> write( ByteBuffer source, long position ) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open && file.isOpen();
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+
+}
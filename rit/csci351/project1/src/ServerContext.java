@@ -0,0 +1,304 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.zip.Deflater;
+
+/**
+ * Configuration and resources shared by every session on the FTP server.
+ * Settings are read once at startup from system properties, for example:
+ * <pre>
+ *     java -Dftp.sessions=512 -Dftp.engine=nio -Dftp.storage=disk -Dftp.idle.timeout=60000 -Dftp.pasv.ports=50000-50099 -Dftp.list.cache=4096 \
+ *          -Dftp.file.cache=4096 -Dftp.attr.cache=4096 -Dftp.hash.cache=4096 -Dftp.buffer.pool=64 -Dftp.buffer.debug=true -Dftp.readahead=8 -Dftp.xferlog=xferlog -Dftp.xferlog.buffer=8192 -Dftp.xferlog.policy=drop -Dftp.stats.interval=60 -Dftp.rate.global=104857600 -Dftp.rate.session=10485760 -Dftp.deflate.level=6 \
+ *          FTPServer 2121
+ * </pre>
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class ServerContext {
+
+
+    // Public constants
+    public static final String ENGINE_BLOCKING = "blocking";
+    public static final String ENGINE_NIO = "nio";
+    public static final String STORAGE_DISK = "disk";
+    public static final String STORAGE_MEMORY = "memory";
+
+    // Private constants
+    private static final String MAX_SESSIONS = "ftp.sessions";
+    private static final String ENGINE = "ftp.engine";
+    private static final String STORAGE = "ftp.storage";
+    private static final String IDLE_TIMEOUT = "ftp.idle.timeout";
+    private static final String PASSIVE_PORTS = "ftp.pasv.ports";
+    private static final String PASSIVE_TIMEOUT = "ftp.pasv.timeout";
+    private static final String LISTING_CACHE = "ftp.list.cache";
+    private static final String FILE_CACHE = "ftp.file.cache";
+    private static final String ATTRIBUTE_CACHE = "ftp.attr.cache";
+    private static final String HASH_CACHE = "ftp.hash.cache";
+    private static final String BUFFER_POOL = "ftp.buffer.pool";
+    private static final String BUFFER_DEBUG = "ftp.buffer.debug";
+    private static final String READ_AHEAD = "ftp.readahead";
+    private static final String TRANSFER_LOG = "ftp.xferlog";
+    private static final String TRANSFER_LOG_BUFFER = "ftp.xferlog.buffer";
+    private static final String TRANSFER_LOG_POLICY = "ftp.xferlog.policy";
+    private static final String STATS_INTERVAL = "ftp.stats.interval";
+    private static final String GLOBAL_RATE = "ftp.rate.global";
+    private static final String SESSION_RATE = "ftp.rate.session";
+    private static final String DEFLATE_LEVEL = "ftp.deflate.level";
+    private static final int DEFAULT_MAX_SESSIONS = 256;
+    private static final int DEFAULT_IDLE_TIMEOUT = 60000;
+    private static final int TIMER_TICK = 100;
+    private static final int TIMER_SLOTS = 1024;
+    private static final int DEFAULT_PASSIVE_TIMEOUT = 30000;
+    private static final int DEFAULT_LISTING_CACHE = 1024;
+    private static final int DEFAULT_FILE_CACHE = 1024;
+    private static final int DEFAULT_ATTRIBUTE_CACHE = 65536;
+    private static final int DEFAULT_HASH_CACHE = 1024;
+    private static final int DEFAULT_BUFFER_POOL = 64;
+    private static final int DEFAULT_TRANSFER_LOG_BUFFER = 8192;
+
+    // Private global variables
+    private int maxSessions;
+    private String engine;
+    private Storage storage;
+    private int idleTimeout;
+    private TimingWheel timers = new TimingWheel( TIMER_TICK, TIMER_SLOTS );
+    private PassivePortPool passivePorts;
+    private DirectoryWatcher directoryWatcher;
+    private ListingCache listingCache;
+    private FileCache fileCache;
+    private AttributeCache attributeCache;
+    private Checksums checksums;
+    private BufferPool buffers;
+    private ReadAhead readAhead;
+    private TransferLog transferLog;
+    private ServerMetrics metrics;
+    private TokenBucket globalBandwidth;
+    private long sessionRate;
+    private int compressionLevel;
+
+
+    /* Public Functions */
+
+
+    /**
+     * Constructor for the ServerContext class.
+     * Reads the server's settings from the system properties.
+     *
+     * @throws NumberFormatException If a numeric setting is malformed
+     * @throws IOException           If failed to load the files of memory storage or open the transfer log
+     */
+    public ServerContext() throws IOException {
+        maxSessions = Math.max( 1, Integer.getInteger( MAX_SESSIONS, DEFAULT_MAX_SESSIONS ) );
+        engine = System.getProperty( ENGINE, ENGINE_BLOCKING ).toLowerCase();
+        idleTimeout = Math.max( 1, Integer.getInteger( IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT ) );
+
+        // Passive ports are given as a range "first-last"
+        String[] ports = System.getProperty( PASSIVE_PORTS, "0-0" ).split( "-" );
+        int first = Integer.parseInt( ports[0].trim() );
+        int last = ports.length < 2 ? first : Integer.parseInt( ports[1].trim() );
+        passivePorts = new PassivePortPool( first, last, Integer.getInteger( PASSIVE_TIMEOUT, DEFAULT_PASSIVE_TIMEOUT ),
+                timers );
+
+        // Memory storage is a snapshot of the directory the server was launched from, which it serves read only
+        boolean memory = System.getProperty( STORAGE, STORAGE_DISK ).equalsIgnoreCase( STORAGE_MEMORY );
+        storage = memory ? MemoryStorage.load( Paths.get( System.getProperty( "user.dir" ) ) ) : new DiskStorage();
+
+        // Caches are disabled when changes to the filesystem cannot be watched, stored files are never watched
+        try {
+            directoryWatcher = memory ? null : new DirectoryWatcher();
+        } catch ( IOException e ) {
+            directoryWatcher = null;
+        }
+
+        int listings = Integer.getInteger( LISTING_CACHE, DEFAULT_LISTING_CACHE );
+        listingCache = new ListingCache( storage, listings > 0 ? directoryWatcher : null, Math.max( 0, listings ) );
+
+        int files = Integer.getInteger( FILE_CACHE, DEFAULT_FILE_CACHE );
+        fileCache = new FileCache( storage, files > 0 ? directoryWatcher : null, Math.max( 0, files ) );
+
+        int attributes = Integer.getInteger( ATTRIBUTE_CACHE, DEFAULT_ATTRIBUTE_CACHE );
+        attributeCache = new AttributeCache( storage, attributes > 0 ? directoryWatcher : null, Math.max( 0, attributes ) );
+
+        // Checksums are keyed by size and modification time, so they need no watcher
+        checksums = new Checksums( storage, Math.max( 0, Integer.getInteger( HASH_CACHE, DEFAULT_HASH_CACHE ) ) );
+
+        // Leak detection tracks every lease, so it is only turned on when debugging
+        buffers = new BufferPool( Integer.getInteger( BUFFER_POOL, DEFAULT_BUFFER_POOL ), Boolean.getBoolean( BUFFER_DEBUG ) );
+
+        // Reading ahead only pays off on disks with slow reads, so binary transfers use sendfile by default
+        int depth = Integer.getInteger( READ_AHEAD, 0 );
+        readAhead = depth > 0 && !memory ? new ReadAhead( depth, buffers ) : null;
+
+        // Commands are only logged when a file is given, entries are dropped rather than stall sessions unless asked to
+        String log = System.getProperty( TRANSFER_LOG );
+        boolean block = System.getProperty( TRANSFER_LOG_POLICY, TransferLog.POLICY_DROP )
+                .equalsIgnoreCase( TransferLog.POLICY_BLOCK );
+        transferLog = log == null ? null : new TransferLog( Paths.get( log ),
+                Integer.getInteger( TRANSFER_LOG_BUFFER, DEFAULT_TRANSFER_LOG_BUFFER ), block );
+
+        // Statistics are only logged periodically when an interval in seconds is given
+        metrics = new ServerMetrics( passivePorts, listingCache, fileCache, attributeCache, checksums, buffers,
+                transferLog );
+        int interval = Integer.getInteger( STATS_INTERVAL, 0 );
+        if ( interval > 0 )
+            metrics.startDump( interval );
+
+        // Bandwidth caps are in bytes per second, transfers are unlimited by default
+        long globalRate = Long.getLong( GLOBAL_RATE, 0 );
+        globalBandwidth = globalRate > 0 ? new TokenBucket( globalRate, null ) : null;
+        sessionRate = Long.getLong( SESSION_RATE, 0 );
+
+        compressionLevel = Integer.getInteger( DEFLATE_LEVEL, Deflater.DEFAULT_COMPRESSION );
+        if ( compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION )
+            compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    }
+
+    /**
+     * Gets the maximum number of client sessions served at the same time.
+     *
+     * @return Maximum number of concurrent sessions
+     */
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    /**
+     * Gets the name of the engine which accepts and reads from control connections.
+     *
+     * @return ENGINE_BLOCKING for a thread per connection, ENGINE_NIO for a shared selector
+     */
+    public String getEngine() {
+        return engine;
+    }
+
+    /**
+     * Gets the storage the server's files are read from.
+     *
+     * @return DiskStorage by default, MemoryStorage when configured
+     */
+    public Storage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Gets how long a control connection may sit idle before the session is timed out.
+     *
+     * @return Idle timeout in milliseconds
+     */
+    public int getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Gets the timing wheel which tracks the deadlines of idle sessions and data connections.
+     *
+     * @return Server's timing wheel
+     */
+    public TimingWheel getTimers() {
+        return timers;
+    }
+
+    /**
+     * Gets the pool of ports used for passive mode data connections.
+     *
+     * @return Passive port pool
+     */
+    public PassivePortPool getPassivePorts() {
+        return passivePorts;
+    }
+
+    /**
+     * Gets the cache of encoded directory listings.
+     *
+     * @return Listing cache
+     */
+    public ListingCache getListingCache() {
+        return listingCache;
+    }
+
+    /**
+     * Gets the cache of open files sent by RETR.
+     *
+     * @return File cache
+     */
+    public FileCache getFileCache() {
+        return fileCache;
+    }
+
+    /**
+     * Gets the cache of file attributes used by SIZE and MDTM.
+     *
+     * @return Attribute cache
+     */
+    public AttributeCache getAttributeCache() {
+        return attributeCache;
+    }
+
+    /**
+     * Gets the cached checksum calculator used by HASH and XCRC.
+     *
+     * @return Checksums of the server's files
+     */
+    public Checksums getChecksums() {
+        return checksums;
+    }
+
+    /**
+     * Gets the pool of direct buffers leased by transfers and listings.
+     *
+     * @return Pool of transfer buffers
+     */
+    public BufferPool getBuffers() {
+        return buffers;
+    }
+
+    /**
+     * Gets the read-ahead pipeline binary transfers are sent through.
+     *
+     * @return Read-ahead pipeline, or null if binary transfers use sendfile and the plain copy loop
+     */
+    public ReadAhead getReadAhead() {
+        return readAhead;
+    }
+
+    /**
+     * Gets the access log every handled command is recorded in.
+     *
+     * @return Transfer log, or null if commands are not logged
+     */
+    public TransferLog getTransferLog() {
+        return transferLog;
+    }
+
+    /**
+     * Creates the bandwidth limit of a new session.
+     * A session's transfers are held to the per-session cap and share the global cap with every other session.
+     *
+     * @return Session's token bucket, or null if transfers are not limited
+     */
+    public TokenBucket newSessionBandwidth() {
+        if ( sessionRate <= 0 )
+            return globalBandwidth;
+
+        return new TokenBucket( sessionRate, globalBandwidth );
+    }
+
+    /**
+     * Gets the deflate level MODE Z transfers start with, until a client picks its own.
+     *
+     * @return Level from 0 to 9, or -1 for the zlib default
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Gets the server's activity counters and histograms.
+     *
+     * @return Server metrics
+     */
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+}
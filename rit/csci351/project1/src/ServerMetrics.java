@@ -0,0 +1,214 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Counters and histograms describing the server's activity since it started.
+ * Every session records into the same instance without locking,
+ * and the collected figures are reported by SITE STATS and by an optional periodic dump to the log.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class ServerMetrics {
+
+
+    // Public constants
+    public static final String OTHER = "OTHER";
+
+    // Private constants
+    private static final Logger LOGGER = Logger.getLogger( ServerMetrics.class.getName() );
+    private static final long NANOS_PER_MICRO = 1000;
+    private static final long NANOS_PER_SECOND = 1000000000;
+
+    // Private global variables
+    private Map<String, Histogram> commands = new ConcurrentHashMap<>();
+    private Histogram transferRates = new Histogram();
+    private LongAdder bytesSent = new LongAdder();
+    private LongAdder bytesReceived = new LongAdder();
+    private LongAdder failedTransfers = new LongAdder();
+    private AtomicInteger activeSessions = new AtomicInteger();
+    private LongAdder totalSessions = new LongAdder();
+    private LongAdder errors = new LongAdder();
+    private PassivePortPool passivePorts;
+    private ListingCache listingCache;
+    private FileCache fileCache;
+    private AttributeCache attributeCache;
+    private Checksums checksums;
+    private BufferPool buffers;
+    private TransferLog transferLog;
+
+
+    /* Public Functions */
+
+
+    /**
+     * Constructor for the ServerMetrics class.
+     *
+     * @param passivePorts   Pool of passive ports whose usage is reported
+     * @param listingCache   Listing cache whose hit rate is reported
+     * @param fileCache      File cache whose hit rate is reported
+     * @param attributeCache Attribute cache whose hit rate is reported
+     * @param checksums      Checksum cache whose hit rate is reported
+     * @param buffers        Buffer pool whose usage is reported
+     * @param transferLog    Transfer log whose entries are reported, or null if commands are not logged
+     */
+    public ServerMetrics( PassivePortPool passivePorts, ListingCache listingCache, FileCache fileCache,
+                          AttributeCache attributeCache, Checksums checksums, BufferPool buffers,
+                          TransferLog transferLog ) {
+        this.passivePorts = passivePorts;
+        this.listingCache = listingCache;
+        this.fileCache = fileCache;
+        this.attributeCache = attributeCache;
+        this.checksums = checksums;
+        this.buffers = buffers;
+        this.transferLog = transferLog;
+    }
+
+    /**
+     * Records how long a command took to handle.
+     *
+     * @param verb  Command verb in upper case, or OTHER for unrecognised commands
+     * @param nanos Time taken to handle the command in nanoseconds
+     */
+    public void recordCommand( String verb, long nanos ) {
+        Histogram latencies = commands.get( verb );
+        if ( latencies == null )
+            latencies = commands.computeIfAbsent( verb, key -> new Histogram() );
+
+        latencies.record( nanos );
+    }
+
+    /**
+     * Records a completed file transfer.
+     *
+     * @param bytes  Number of bytes transferred
+     * @param nanos  Time taken by the transfer in nanoseconds
+     * @param upload True if the bytes were received from the client, false if they were sent
+     */
+    public void recordTransfer( long bytes, long nanos, boolean upload ) {
+        if ( upload )
+            bytesReceived.add( bytes );
+        else
+            bytesSent.add( bytes );
+
+        transferRates.record( (long) (bytes * (double) NANOS_PER_SECOND / Math.max( 1, nanos )) );
+    }
+
+    /**
+     * Records a file transfer which ended in an error.
+     */
+    public void recordFailedTransfer() {
+        failedTransfers.increment();
+    }
+
+    /**
+     * Records a session which ended because of an unexpected error.
+     */
+    public void recordError() {
+        errors.increment();
+    }
+
+    /**
+     * Records a newly connected client.
+     */
+    public void sessionOpened() {
+        activeSessions.incrementAndGet();
+        totalSessions.increment();
+    }
+
+    /**
+     * Records a disconnected client.
+     */
+    public void sessionClosed() {
+        activeSessions.decrementAndGet();
+    }
+
+    /**
+     * Gets the latency histogram of a command.
+     *
+     * @param verb Command verb in upper case
+     * @return Histogram of latencies in nanoseconds, or null if the command was never received
+     */
+    public Histogram getCommand( String verb ) {
+        return commands.get( verb );
+    }
+
+    /**
+     * Describes every collected figure, one line each.
+     *
+     * @return Lines of the report
+     */
+    public List<String> report() {
+        List<String> lines = new ArrayList<>();
+
+        lines.add( "Sessions: " + activeSessions.get() + " active, " + totalSessions.sum() + " total, "
+                + errors.sum() + " failed" );
+        lines.add( "Passive ports: " + passivePorts.getLeased() + " leased, " + passivePorts.getSize() + " pooled" );
+        lines.add( "Listing cache: " + listingCache.getHits() + " hits, " + listingCache.getMisses() + " misses" );
+        lines.add( "File cache: " + fileCache.getHits() + " hits, " + fileCache.getMisses() + " misses, "
+                + fileCache.getSize() + " open" );
+        lines.add( "Attribute cache: " + attributeCache.getHits() + " hits, " + attributeCache.getMisses() + " misses, "
+                + attributeCache.getSize() + " entries" );
+        lines.add( "Checksum cache: " + checksums.getHits() + " hits, " + checksums.getMisses() + " misses" );
+        lines.add( "Buffer pool: " + buffers.getLeased() + " leased, " + buffers.getAllocated() + " allocated, "
+                + buffers.getLeaks() + " leaked" );
+        if ( transferLog != null )
+            lines.add( "Transfer log: " + transferLog.getWritten() + " written, " + transferLog.getDropped() + " dropped" );
+        lines.add( "Transfers: " + transferRates.getCount() + " complete, " + failedTransfers.sum() + " failed, "
+                + bytesSent.sum() + " bytes sent, " + bytesReceived.sum() + " bytes received" );
+        if ( transferRates.getCount() > 0 )
+            lines.add( "Transfer rate (KB/s): " + summary( transferRates, 1024 ) );
+
+        // Commands in alphabetical order, latencies in microseconds
+        for ( Map.Entry<String, Histogram> command : new TreeMap<>( commands ).entrySet() )
+            lines.add( command.getKey() + " (us): " + summary( command.getValue(), NANOS_PER_MICRO ) );
+
+        return lines;
+    }
+
+    /**
+     * Starts logging the report at a fixed interval on a background thread.
+     *
+     * @param seconds Seconds between reports
+     */
+    public void startDump( int seconds ) {
+        ScheduledExecutorService dump = Executors.newSingleThreadScheduledExecutor( task -> {
+            Thread thread = new Thread( task, "ServerMetrics" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+
+        dump.scheduleAtFixedRate( () -> LOGGER.info( String.join( System.lineSeparator(), report() ) ),
+                seconds, seconds, TimeUnit.SECONDS );
+    }
+
+
+    /* Private Functions */
+
+
+    /**
+     * Summarize a histogram's count, mean and percentiles.
+     *
+     * @param histogram Histogram to summarize
+     * @param unit      Divisor converting recorded values to the reported unit
+     * @return Single line summary
+     */
+    private static String summary( Histogram histogram, long unit ) {
+        return "count " + histogram.getCount()
+                + ", mean " + histogram.getMean() / unit
+                + ", p50 " + histogram.getPercentile( 0.5 ) / unit
+                + ", p99 " + histogram.getPercentile( 0.99 ) / unit
+                + ", p999 " + histogram.getPercentile( 0.999 ) / unit
+                + ", max " + histogram.getMax() / unit;
+    }
+
+}
@@ -2,6 +2,17 @@ import java.io.*;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * FTP proxy class for interacting with the specified FTP server.
@@ -14,26 +25,44 @@ public class ServerProxy {
 
     // Private constants
     private static final int BUFFER = 9216;
+    private static final int SEGMENT_POOL = 16;
+    private static final BufferPool BUFFERS = new BufferPool( SEGMENT_POOL, false );
     private static final String DEBUG_TEXT = "---> ";
     private static final String COMMANDS = "    ascii           Set ASCII transfer type\n"
             + "    binary          Set binary transfer type\n"
             + "    cd <path>       Change remote working directory\n"
             + "    cdup            Change remote working directory to parent directory\n"
+            + "    compress [<level>]\n"
+            + "                    Toggle compressed (MODE Z) transfers, optionally at a deflate level from 0 to 9\n"
             + "    debug           Toggle debugging mode\n"
             + "    dir             List the contents of the remote directory\n"
-            + "    get <filename>  Retrieve a file from the remote system\n"
+            + "    get <filename>  Retrieve a file from the remote system, resuming a partial local copy\n"
             + "    help            Display this command listing\n"
             + "    passive         Toggle passive/active transfer mode\n"
             + "    pwd             Print the working directory on the server\n"
-            + "    quit            Close the connection to the server and terminate the program";
+            + "    quit            Close the connection to the server and terminate the program\n"
+            + "    sget <filename> [<segments>]\n"
+            + "                    Retrieve a file in segments over several connections at once";
 
     // Private global variables
     private boolean passive = false;
     private boolean debug = false;
+    private boolean quiet = false;
+    private boolean compressed = false;
+    private boolean ascii = false;
+    private AsciiTranscoder asciiTranscoder;
+    private Inflater inflater;
+    private byte[] buffer = new byte[BUFFER];
+    private String server;
+    private int port;
+    private String username;
+    private String password;
     private String ipAddress;
     private Socket socket = new Socket();
     private BufferedReader bufferedReader;
     private BufferedWriter bufferedWriter;
+    private long restartOffset = 0;
+    private String transferReply = "";
 
 
     /* Public Functions */
@@ -48,7 +77,11 @@ public class ServerProxy {
      * @throws IOException If failed to connect to the server
      */
     public ServerProxy( String server, int port ) throws IOException {
-        // Connect
+        this.server = server;
+        this.port = port;
+
+        // Connect, sending small commands at once rather than waiting on Nagle's algorithm
+        socket.setTcpNoDelay( true );
         socket.connect( new InetSocketAddress( server, port ) );
         ipAddress = socket.getLocalAddress().toString().substring( 1 ).replace( '.', ',' );
 
@@ -70,19 +103,38 @@ public class ServerProxy {
 
         // Send Username
         FTP.displayMessage( "Enter Username: ", false );
-        writeStream( "USER " + FTP.getUserInput() );
+        username = FTP.getUserInput();
+        writeStream( "USER " + username );
 
         String line = readStream();
         assertStatus( line, 331, true, "Login failed." );
 
         // Send password
         FTP.displayMessage( "Enter Password: ", false );
-        writeStream( "PASS " + FTP.getUserInput() );
+        password = FTP.getUserInput();
+        writeStream( "PASS " + password );
 
         line = readStream();
         assertStatus( line, 230, true, "Login failed." );
     }
 
+    /**
+     * Attempts to log into the connected FTP server with the given credentials.
+     * Used by connections opened on behalf of another proxy, so it neither prompts nor exits.
+     *
+     * @param username Username to log in with
+     * @param password Password to log in with
+     * @return True if logged in, false otherwise
+     * @throws IOException If failed to read from or write to the server
+     */
+    public boolean login( String username, String password ) throws IOException {
+        // Get welcome message
+        readStream();
+
+        List<String> replies = sendBatch( Arrays.asList( "USER " + username, "PASS " + password ) );
+        return replies.get( 0 ).startsWith( "331" ) && replies.get( 1 ).startsWith( "230" );
+    }
+
     /**
      * Sets the server's transfer mode to ASCII.
      *
@@ -90,7 +142,8 @@ public class ServerProxy {
      */
     public void setAsciiMode() throws IOException {
         writeStream( "TYPE A" );
-        readStream();
+        if ( readStream().startsWith( "200" ) )
+            ascii = true;
     }
 
     /**
@@ -100,7 +153,8 @@ public class ServerProxy {
      */
     public void setBinaryMode() throws IOException {
         writeStream( "TYPE I" );
-        readStream();
+        if ( readStream().startsWith( "200" ) )
+            ascii = false;
     }
 
     /**
@@ -141,6 +195,50 @@ public class ServerProxy {
         return debug;
     }
 
+    /**
+     * If in quiet mode, changes the proxy to display the server's replies.
+     * If displaying replies, changes the proxy to quiet mode.
+     */
+    public void changeQuietMode() {
+        quiet = !quiet;
+    }
+
+    /**
+     * Gets the proxy's current status of quiet mode.
+     *
+     * @return True if the server's replies are not displayed, false otherwise
+     */
+    public boolean getQuietMode() {
+        return quiet;
+    }
+
+    /**
+     * If in stream mode, asks the server to compress transfers with MODE Z.
+     * If in compressed mode, asks the server to return to stream mode.
+     *
+     * @param level Deflate level from 0 to 9 for the server to compress with, or -1 for the server's default
+     * @throws IOException If failed to read from or write to the server
+     */
+    public void changeCompressionMode( int level ) throws IOException {
+        writeStream( compressed ? "MODE S" : "MODE Z" );
+        if ( !readStream().startsWith( "200" ) ) return;
+        compressed = !compressed;
+
+        if ( compressed && level >= 0 ) {
+            writeStream( "OPTS MODE Z LEVEL " + level );
+            readStream();
+        }
+    }
+
+    /**
+     * Gets the proxy's current status of compressed mode.
+     *
+     * @return True for compressed transfers, false otherwise
+     */
+    public boolean getCompressionMode() {
+        return compressed;
+    }
+
     /**
      * Setup a data connection with the FTP server to transfer the directory listing over.
      * Displays the received listing to standard out.
@@ -148,15 +246,14 @@ public class ServerProxy {
      * @throws IOException If failed to read from or write to the server
      */
     public void getDirectoryListing() throws IOException {
-        BufferedInputStream dataReader = getDataConnectionReader( "LIST" );
+        InputStream dataReader = inflate( getDataConnectionReader( "LIST", 0 ) );
         if ( dataReader == null ) return;
 
-        // Read the data stream
-        byte[] buffer = new byte[BUFFER];
-        while ( dataReader.read( buffer ) != -1 ) {
-            FTP.displayMessage( new String( buffer ), false );
-            buffer = new byte[BUFFER];
-        }
+        // Copy the data stream straight to standard out, so a long listing does not build a String per read
+        int readBytes;
+        while ( (readBytes = dataReader.read( buffer )) != -1 )
+            System.out.write( buffer, 0, readBytes );
+        System.out.flush();
 
         dataReader.close();
         readStream();
@@ -165,21 +262,40 @@ public class ServerProxy {
     /**
      * Setup a data connection with the FTP server to transfer a file over.
      * Writes the data to a local file of the same name.
+     * If a partial local copy exists in binary mode, asks the server to restart the transfer at its end and appends to it.
+     * Should the server find the local copy longer than its own, such as after the remote file shrank,
+     * the file is retrieved again from the start.
+     * ASCII transfers are never resumed, the local copy's length counts translated line endings.
+     * In compressed mode the data is inflated as it is read, in ASCII mode CRLF line endings are translated to LF.
      *
      * @param path Path of the file to retrieve from the server
      * @throws IOException If failed to read from or write to the server
      */
     public void retrieveFile( String path ) throws IOException {
-        BufferedInputStream dataReader = getDataConnectionReader( "RETR " + path );
+        File file = new File( path.substring( path.lastIndexOf( "/" ) + 1 ) );
+
+        long restart = !ascii && file.isFile() ? file.length() : 0;
+        BufferedInputStream connection = getDataConnectionReader( "RETR " + path, restart );
+        if ( connection == null && restart > 0 && transferReply.startsWith( "554" ) )
+            connection = getDataConnectionReader( "RETR " + path, 0 );
+
+        InputStream dataReader = inflate( connection );
         if ( dataReader == null ) return;
 
-        FileOutputStream outputStream = new FileOutputStream( new File( path.substring( path.lastIndexOf( "/" ) + 1 ) ) );
-        byte[] buffer = new byte[BUFFER];
+        // Append only if the server accepted the restart position
+        FileOutputStream outputStream = new FileOutputStream( file, restartOffset > 0 );
 
         // Read the data stream
-        int readBytes;
-        while ( (readBytes = dataReader.read( buffer )) != -1 ) {
-            outputStream.write( buffer, 0, readBytes );
+        if ( ascii ) {
+            if ( asciiTranscoder == null )
+                asciiTranscoder = new AsciiTranscoder();
+            asciiTranscoder.receive( dataReader, outputStream );
+        }
+        else {
+            int readBytes;
+            while ( (readBytes = dataReader.read( buffer )) != -1 ) {
+                outputStream.write( buffer, 0, readBytes );
+            }
         }
         outputStream.flush();
 
@@ -188,6 +304,89 @@ public class ServerProxy {
         readStream();
     }
 
+    /**
+     * Setup a data connection with the FTP server for a LIST or RETR and reads everything sent over it,
+     * throwing the data away. Used to put load on the server without the cost of keeping what it sends.
+     * In compressed mode the data is inflated as it is read, so the count is of uncompressed bytes.
+     *
+     * @param command Command to send to the server specifying what data to send
+     * @return Number of bytes received, or -1 if the transfer was refused or failed
+     * @throws IOException If failed to read from or write to the server
+     */
+    public long discardTransfer( String command ) throws IOException {
+        InputStream dataReader = inflate( getDataConnectionReader( command, 0 ) );
+        if ( dataReader == null ) return -1;
+
+        long received = 0;
+        int readBytes;
+        try {
+            while ( (readBytes = dataReader.read( buffer )) != -1 )
+                received += readBytes;
+        } finally {
+            dataReader.close();
+        }
+
+        return readStream().startsWith( "226" ) ? received : -1;
+    }
+
+    /**
+     * Retrieves a file in byte range segments, each over its own control and data connection.
+     * Every segment is written at its offset of the local file as it arrives, so the file needs no reassembly.
+     * Falls back to a single connection if the server cannot report the file's size.
+     *
+     * @param path     Path of the file to retrieve from the server
+     * @param segments Number of segments to retrieve at once
+     * @throws IOException If failed to read from or write to the server
+     */
+    public void segmentedRetrieveFile( String path, int segments ) throws IOException {
+        long size = fileSize( path );
+        String directory = workingDirectory();
+        if ( size < 0 || directory == null || segments < 2 ) {
+            retrieveFile( path );
+            return;
+        }
+
+        File file = new File( path.substring( path.lastIndexOf( "/" ) + 1 ) );
+        AtomicBoolean failed = new AtomicBoolean( false );
+        long start = System.currentTimeMillis();
+
+        try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING ) ) {
+
+            // Split the file into segments of nearly equal length
+            Thread[] threads = new Thread[segments];
+            for ( int i = 0; i < segments; ++i ) {
+                long first = size * i / segments;
+                long end = size * (i + 1) / segments;
+
+                threads[i] = new Thread( () -> {
+                    try {
+                        if ( first < end && !retrieveSegment( directory, path, first, end, channel ) )
+                            failed.set( true );
+                    } catch ( IOException e ) {
+                        failed.set( true );
+                    }
+                } );
+                threads[i].start();
+            }
+
+            for ( Thread thread : threads ) {
+                try {
+                    thread.join();
+                } catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    failed.set( true );
+                }
+            }
+        }
+
+        if ( failed.get() )
+            FTP.displayMessage( "Segmented transfer failed." );
+        else
+            FTP.displayMessage( size + " bytes received in " + segments + " segments in "
+                    + (System.currentTimeMillis() - start) + " ms." );
+    }
+
     /**
      * Get a formatted string of the proxy's supported commands along with their descriptions.
      *
@@ -234,19 +433,158 @@ public class ServerProxy {
         readStream();
     }
 
+    /**
+     * Closes the connection to the server without notifying it, such as after the server stopped replying.
+     *
+     * @throws IOException If failed to close the connection
+     */
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * Sends a batch of commands in a single write, then collects the server's reply to each of them.
+     * Saves a round trip for every command after the first, commands may not depend on an earlier reply.
+     *
+     * @param commands Commands to send, in order
+     * @return Final reply line to each command, in the same order
+     * @throws IOException If failed to read from or write to the server
+     */
+    public List<String> sendBatch( List<String> commands ) throws IOException {
+        for ( String command : commands ) {
+            if ( debug )
+                FTP.displayMessage( DEBUG_TEXT + command );
+            bufferedWriter.write( command + "\r\n" );
+        }
+        bufferedWriter.flush();
+
+        List<String> replies = new ArrayList<>( commands.size() );
+        for ( int i = 0; i < commands.size(); ++i )
+            replies.add( readStream() );
+
+        return replies;
+    }
+
 
     /* Private Functions */
 
 
+    /**
+     * Asks the server for the size of a file.
+     *
+     * @param path Path of the file on the server
+     * @return Size of the file in bytes, or -1 if the server could not report it
+     * @throws IOException If failed to read from or write to the server
+     */
+    private long fileSize( String path ) throws IOException {
+        writeStream( "SIZE " + path );
+        String response = readStream();
+        if ( !response.startsWith( "213 " ) ) return -1;
+
+        try {
+            return Long.parseLong( response.substring( 4 ).trim() );
+        } catch ( NumberFormatException e ) {
+            return -1;
+        }
+    }
+
+    /**
+     * Asks the server for the current working directory.
+     *
+     * @return Path of the working directory, or null if the server could not report it
+     * @throws IOException If failed to read from or write to the server
+     */
+    private String workingDirectory() throws IOException {
+        writeStream( "PWD" );
+        String response = readStream();
+        if ( !response.startsWith( "257" ) || response.indexOf( '"' ) == response.lastIndexOf( '"' ) ) return null;
+
+        return response.substring( response.indexOf( '"' ) + 1, response.lastIndexOf( '"' ) );
+    }
+
+    /**
+     * Retrieves one byte range of a file over a new connection to the server.
+     * Writes the received bytes at their offset of the local file with positional writes,
+     * which several segments may do on the same channel at once.
+     *
+     * @param directory Working directory of this proxy on the server
+     * @param path      Path of the file to retrieve from the server
+     * @param first     Offset of the first byte of the segment
+     * @param end       Offset after the last byte of the segment
+     * @param channel   Local file to write the segment to
+     * @return True if the whole segment was received, false otherwise
+     * @throws IOException If failed to read from or write to the server or the local file
+     */
+    private boolean retrieveSegment( String directory, String path, long first, long end, FileChannel channel )
+            throws IOException {
+        ServerProxy segment = new ServerProxy( server, port );
+        segment.quiet = true;
+        segment.passive = passive;
+
+        try {
+            if ( !segment.login( username, password ) ) return false;
+
+            List<String> replies = segment.sendBatch( Arrays.asList( "TYPE I", "CWD " + directory ) );
+            if ( !replies.get( 0 ).startsWith( "200" ) || !replies.get( 1 ).startsWith( "250" ) ) return false;
+
+            BufferedInputStream dataReader = segment.getDataConnectionReader( "RETR " + path, first, end );
+            if ( dataReader == null || segment.restartOffset != first ) return false;
+
+            // Segments running at once lease direct buffers from the shared pool
+            ReadableByteChannel data = Channels.newChannel( dataReader );
+            ByteBuffer buffer = BUFFERS.acquire( BUFFER );
+            long position = first;
+
+            // Read the data stream
+            try {
+                while ( position < end && data.read( buffer ) != -1 ) {
+                    buffer.flip();
+                    buffer.limit( (int) Math.min( buffer.limit(), end - position ) );
+                    while ( buffer.hasRemaining() )
+                        position += channel.write( buffer, position );
+                    buffer.clear();
+                }
+            } finally {
+                BUFFERS.release( buffer );
+            }
+
+            data.close();
+            segment.readStream();
+            segment.quit();
+            return position == end;
+        } finally {
+            segment.socket.close();
+        }
+    }
+
     /**
      * Makes an active or passive connection between the proxy and server.
      * Sends the given command to the server to start sending data over the input stream.
+     * A non-zero restart offset is sent with REST just before the command,
+     * and the offset the server accepted is left in the global restart offset.
      *
      * @param command Command to send to the server specifying what data to send
+     * @param restart Byte offset to start the transfer at, 0 for the beginning
      * @return BufferedInputStream of the connection's input stream
      * @throws IOException If failed to read from, write to, or connect to the given address
      */
-    private BufferedInputStream getDataConnectionReader( String command ) throws IOException {
+    private BufferedInputStream getDataConnectionReader( String command, long restart ) throws IOException {
+        return getDataConnectionReader( command, restart, -1 );
+    }
+
+    /**
+     * Makes an active or passive connection between the proxy and server.
+     * Sends the given command to the server to start sending data over the input stream.
+     * The transfer is limited to a byte range with RANG if an end is given, otherwise restarted with REST.
+     *
+     * @param command Command to send to the server specifying what data to send
+     * @param restart Byte offset to start the transfer at, 0 for the beginning
+     * @param end     Offset after the last byte to transfer, -1 for the end of the data
+     * @return BufferedInputStream of the connection's input stream
+     * @throws IOException If failed to read from, write to, or connect to the given address
+     */
+    private BufferedInputStream getDataConnectionReader( String command, long restart, long end ) throws IOException {
+        transferReply = "";
         if ( passive ) {  // Passive Mode
 
             // Ask the server which port to connect to
@@ -275,8 +613,10 @@ public class ServerProxy {
             }
 
             // Tell the server to send the data
-            writeStream( command );
-            if ( !readStream().substring( 0, 3 ).equals( "150" ) ) return null;
+            if ( !requestTransfer( command, restart, end ) ) {
+                data.close();
+                return null;
+            }
 
             return new BufferedInputStream( data.getInputStream() );
         }
@@ -298,13 +638,59 @@ public class ServerProxy {
             }
 
             // Tell the server to send the data
-            writeStream( command );
-            if ( !readStream().substring( 0, 3 ).equals( "150" ) ) return null;
+            if ( !requestTransfer( command, restart, end ) ) {
+                data.close();
+                return null;
+            }
 
-            return new BufferedInputStream( data.accept().getInputStream() );
+            Socket connection = data.accept();
+            data.close();
+            return new BufferedInputStream( connection.getInputStream() );
         }
     }
 
+    /**
+     * Decompress a data connection's stream as it is read when in compressed mode.
+     * The proxy's Inflater is reused by every transfer.
+     *
+     * @param dataReader Stream of the data connection, or null if it could not be opened
+     * @return Stream of the uncompressed data, or null if the data connection could not be opened
+     */
+    private InputStream inflate( BufferedInputStream dataReader ) {
+        if ( dataReader == null || !compressed )
+            return dataReader;
+
+        if ( inflater == null )
+            inflater = new Inflater();
+        inflater.reset();
+
+        return new InflaterInputStream( dataReader, inflater, BUFFER );
+    }
+
+    /**
+     * Asks the server to start a transfer, pipelining the REST or RANG command which positions it.
+     * Records the accepted offset, or 0 if the server refused it, and the server's reply to the command.
+     *
+     * @param command Command to send to the server specifying what data to send
+     * @param restart Byte offset to start the transfer at, 0 for the beginning
+     * @param end     Offset after the last byte to transfer, -1 for the end of the data
+     * @return True if the server is opening the data connection, false otherwise
+     * @throws IOException If failed to read from or write to the server
+     */
+    private boolean requestTransfer( String command, long restart, long end ) throws IOException {
+        List<String> commands = new ArrayList<>();
+        if ( end >= 0 )
+            commands.add( "RANG " + restart + " " + (end - 1) );
+        else if ( restart > 0 )
+            commands.add( "REST " + restart );
+        commands.add( command );
+
+        List<String> replies = sendBatch( commands );
+        restartOffset = commands.size() > 1 && replies.get( 0 ).startsWith( "350" ) ? restart : 0;
+        transferReply = replies.get( replies.size() - 1 );
+        return transferReply.startsWith( "150" );
+    }
+
     /**
      * Writes a message to the global buffered output stream.
      * Sends that message to the connected FTP server.
@@ -323,10 +709,11 @@ public class ServerProxy {
 
     /**
      * Read the global buffered input stream until a valid server response code is received.
-     * Exits the current running program if a server timeout occurs.
+     * Exits the current running program if a server timeout occurs, unless in quiet mode.
      *
      * @return The server's last response in the input stream
-     * @throws IOException If failed to read from input steam
+     * @throws EOFException If the server closed the connection
+     * @throws IOException  If failed to read from input steam, or the server timed out a quiet session
      */
     private String readStream() throws IOException {
         String result;
@@ -334,7 +721,14 @@ public class ServerProxy {
 
             // Read buffer
             String line = bufferedReader.readLine();
-            FTP.displayMessage( line );
+            if ( line == null )
+                throw new EOFException( "Server closed the connection" );
+            if ( !quiet )
+                FTP.displayMessage( line );
+
+            // Connections opened on behalf of something else fail on their own instead of ending the program
+            if ( quiet && line.startsWith( "421" ) )
+                throw new IOException( "Server closed the session: " + line );
             assertStatus( line.substring( 0, 3 ), 421, false, "Server timeout. Terminating client." );
 
             try { // If line contains a response code, break
@@ -0,0 +1,247 @@
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * State belonging to a single client session on the FTP server.
+ * Holds the session's number, working directory, transfer type and mode, hash algorithm, restart range, allocation
+ * and pending data connection,
+ * so that concurrent sessions never share state through process-wide properties.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class SessionContext {
+
+
+    // Private constants
+    private static final AtomicLong SESSIONS = new AtomicLong();
+
+    // Private global variables
+    private long id = SESSIONS.incrementAndGet();
+    private Path workingDirectory;
+    private boolean binaryTransfer = true;
+    private boolean compressedTransfer = false;
+    private int compressionLevel;
+    private String hashAlgorithm = Checksums.CRC32C;
+    private long restartOffset = 0;
+    private long rangeEnd = Long.MAX_VALUE;
+    private long allocation = 0;
+    private DataConnection dataConnection;
+
+
+    /* Public Functions */
+
+
+    /**
+     * Constructor for the SessionContext class.
+     * Starts the session in the directory the server was launched from.
+     */
+    public SessionContext() {
+        workingDirectory = Paths.get( System.getProperty( "user.dir" ) ).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Resolves a client supplied path against the session's working directory.
+     * Resolution is purely lexical and does not touch the filesystem.
+     *
+     * @param path Absolute or relative path given by the client
+     * @return Normalized absolute path
+     */
+    public Path resolve( String path ) {
+        return workingDirectory.resolve( path ).normalize();
+    }
+
+    /**
+     * Gets the number which identifies the session in the transfer log.
+     *
+     * @return Session number, counting from 1 in the order sessions were opened
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Gets the session's current working directory.
+     *
+     * @return Absolute path of the working directory
+     */
+    public Path getWorkingDirectory() {
+        return workingDirectory;
+    }
+
+    /**
+     * Sets the session's current working directory.
+     *
+     * @param directory Absolute path of the new working directory
+     */
+    public void setWorkingDirectory( Path directory ) {
+        workingDirectory = directory;
+    }
+
+    /**
+     * Gets whether files are sent in binary or ASCII mode.
+     *
+     * @return True for binary transfers, false for ASCII transfers
+     */
+    public boolean isBinaryTransfer() {
+        return binaryTransfer;
+    }
+
+    /**
+     * Sets whether files are sent in binary or ASCII mode.
+     *
+     * @param binary True for binary transfers, false for ASCII transfers
+     */
+    public void setBinaryTransfer( boolean binary ) {
+        binaryTransfer = binary;
+    }
+
+    /**
+     * Gets whether data is sent in MODE Z, compressed as a zlib stream.
+     *
+     * @return True for compressed transfers, false for stream mode transfers
+     */
+    public boolean isCompressedTransfer() {
+        return compressedTransfer;
+    }
+
+    /**
+     * Sets whether data is sent in MODE Z, compressed as a zlib stream.
+     *
+     * @param compressed True for compressed transfers, false for stream mode transfers
+     */
+    public void setCompressedTransfer( boolean compressed ) {
+        compressedTransfer = compressed;
+    }
+
+    /**
+     * Gets the deflate level of compressed transfers.
+     *
+     * @return Level from 0 to 9, or -1 for the zlib default
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Sets the deflate level of compressed transfers.
+     *
+     * @param level Level from 0 to 9, or -1 for the zlib default
+     */
+    public void setCompressionLevel( int level ) {
+        compressionLevel = level;
+    }
+
+    /**
+     * Gets the checksum algorithm used by HASH.
+     *
+     * @return Name of the algorithm
+     */
+    public String getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    /**
+     * Sets the checksum algorithm used by HASH.
+     *
+     * @param algorithm Name of a supported algorithm
+     */
+    public void setHashAlgorithm( String algorithm ) {
+        hashAlgorithm = algorithm;
+    }
+
+    /**
+     * Sets the offset at which the next transfer starts, as given by a REST command.
+     *
+     * @param offset Byte offset into the file
+     */
+    public void setRestartOffset( long offset ) {
+        restartOffset = offset;
+        rangeEnd = Long.MAX_VALUE;
+    }
+
+    /**
+     * Sets the byte range the next transfer sends, as given by a RANG command.
+     *
+     * @param start Offset of the first byte to send
+     * @param end   Offset after the last byte to send
+     */
+    public void setRange( long start, long end ) {
+        restartOffset = start;
+        rangeEnd = end;
+    }
+
+    /**
+     * Gets the offset after the last byte of the current transfer and resets it for the following transfers.
+     * Must be taken together with the restart offset.
+     *
+     * @return End of the range given by the last RANG command, or Long.MAX_VALUE to send to the end of the file
+     */
+    public long takeRangeEnd() {
+        long end = rangeEnd;
+        rangeEnd = Long.MAX_VALUE;
+        return end;
+    }
+
+    /**
+     * Gets the offset at which the current transfer starts and resets it for the following transfers.
+     *
+     * @return Byte offset given by the last REST command, or 0 if none was given
+     */
+    public long takeRestartOffset() {
+        long offset = restartOffset;
+        restartOffset = 0;
+        return offset;
+    }
+
+    /**
+     * Sets the number of bytes to reserve for the next upload, as given by an ALLO command.
+     *
+     * @param size Expected size of the upload in bytes
+     */
+    public void setAllocation( long size ) {
+        allocation = size;
+    }
+
+    /**
+     * Gets the number of bytes to reserve for the current upload and resets it for the following uploads.
+     *
+     * @return Size given by the last ALLO command, or 0 if none was given
+     */
+    public long takeAllocation() {
+        long size = allocation;
+        allocation = 0;
+        return size;
+    }
+
+    /**
+     * Gets the data connection prepared by the last PASV or PORT command.
+     *
+     * @return Pending data connection, or null if none was prepared
+     */
+    public DataConnection getDataConnection() {
+        return dataConnection;
+    }
+
+    /**
+     * Sets the data connection to use for the next transfer.
+     * Closes any previously prepared connection which was never used.
+     *
+     * @param connection New data connection, or null to clear it
+     */
+    public void setDataConnection( DataConnection connection ) {
+        if ( dataConnection != null && dataConnection != connection )
+            dataConnection.close();
+
+        dataConnection = connection;
+    }
+
+    /**
+     * Releases the session's resources.
+     */
+    public void close() {
+        setDataConnection( null );
+    }
+
+}
@@ -0,0 +1,83 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Storage the FTP server reads its files and directories from.
+ * Paths are the absolute, normalized paths sessions resolve their commands to,
+ * so a backend decides what lies behind a path without the protocol engine knowing.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public interface Storage {
+
+    /**
+     * Gets whether the path is a directory.
+     *
+     * @param path Path to check
+     * @return True if the path is a directory, false otherwise
+     */
+    boolean isDirectory( Path path );
+
+    /**
+     * Gets whether the path exists and may be read.
+     *
+     * @param path Path to check
+     * @return True if the path can be read, false otherwise
+     */
+    boolean isReadable( Path path );
+
+    /**
+     * Gets whether uploads must be refused.
+     *
+     * @return True if the storage cannot be written, false otherwise
+     */
+    boolean isReadOnly();
+
+    /**
+     * Gets whether the channels of opened files can be memory mapped.
+     *
+     * @return True if FileChannel.map is supported, false otherwise
+     */
+    boolean isMappable();
+
+    /**
+     * Resolves a path to the real path of what it names, which is the key every cache uses.
+     *
+     * @param path Path to resolve
+     * @return Real path
+     * @throws IOException If the path does not exist
+     */
+    Path toRealPath( Path path ) throws IOException;
+
+    /**
+     * Reads the attributes of a file or directory.
+     *
+     * @param path Path of the file or directory
+     * @return Attributes of the path
+     * @throws IOException If the path does not exist or cannot be read
+     */
+    BasicFileAttributes readAttributes( Path path ) throws IOException;
+
+    /**
+     * Opens a directory to iterate over its entries.
+     *
+     * @param directory Path of the directory
+     * @return Stream of the directory's entries, closed by the caller
+     * @throws IOException If the directory does not exist or cannot be read
+     */
+    DirectoryStream<Path> newDirectoryStream( Path directory ) throws IOException;
+
+    /**
+     * Opens a file for reading.
+     *
+     * @param file Path of the file
+     * @return Channel reading the file, closed by the caller
+     * @throws IOException If the file does not exist or cannot be read
+     */
+    FileChannel open( Path file ) throws IOException;
+
+}
@@ -0,0 +1,203 @@
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hashed timing wheel which runs a task once its deadline passes, unless the task is cancelled first.
+ * Deadlines are rounded up to the wheel's tick and hashed into the slot of that tick,
+ * each slot holding a doubly linked list of its timeouts,
+ * so scheduling and cancelling are constant time no matter how many timeouts are pending.
+ * A single thread advances the wheel one tick at a time and only visits the timeouts of the current slot.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class TimingWheel {
+
+
+    // Private constants
+    private static final Logger LOGGER = Logger.getLogger( TimingWheel.class.getName() );
+
+    // Private global variables
+    private Timeout[] slots;
+    private int mask;
+    private long tickNanos;
+    private long start = System.nanoTime();
+    private long tick = 0;
+
+
+    /* Public Functions */
+
+
+    /**
+     * Constructor for the TimingWheel class.
+     * Starts the daemon thread which advances the wheel.
+     *
+     * @param tickMillis Milliseconds between ticks, the precision of every deadline
+     * @param slots      Number of slots, rounded up to a power of two,
+     *                   deadlines further away than one turn of the wheel wait out the extra turns in their slot
+     */
+    public TimingWheel( long tickMillis, int slots ) {
+        this.slots = new Timeout[Integer.highestOneBit( Math.max( 1, slots - 1 ) ) << 1];
+        mask = this.slots.length - 1;
+        tickNanos = TimeUnit.MILLISECONDS.toNanos( Math.max( 1, tickMillis ) );
+
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor( task -> {
+            Thread thread = new Thread( task, "TimingWheel" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        ticker.scheduleAtFixedRate( this::advance, tickNanos, tickNanos, TimeUnit.NANOSECONDS );
+    }
+
+    /**
+     * Schedules a task to run once the given delay has passed.
+     * The task runs on the wheel's thread, so it must be quick and must not block.
+     *
+     * @param delayMillis Milliseconds to wait before running the task
+     * @param task        Task to run
+     * @return Timeout which can cancel the task
+     */
+    public Timeout schedule( long delayMillis, Runnable task ) {
+        Timeout timeout = new Timeout( task );
+        long ticks = Math.max( 1, (TimeUnit.MILLISECONDS.toNanos( delayMillis ) + tickNanos - 1) / tickNanos );
+
+        synchronized ( this ) {
+            timeout.deadline = tick + ticks;
+            link( timeout );
+        }
+
+        return timeout;
+    }
+
+
+    /* Private Functions */
+
+
+    /**
+     * Advance the wheel to the current time, running every task whose deadline has passed.
+     * Ticks missed while the thread was delayed are caught up one by one.
+     */
+    private void advance() {
+        long now = (System.nanoTime() - start) / tickNanos;
+
+        while ( true ) {
+            Timeout expired = null;
+
+            // Unlink the due timeouts of the next slot, running them once the wheel is released
+            synchronized ( this ) {
+                if ( tick >= now ) return;
+                ++tick;
+
+                Timeout timeout = slots[(int) (tick & mask)];
+                while ( timeout != null ) {
+                    Timeout next = timeout.next;
+                    if ( timeout.deadline <= tick ) {
+                        unlink( timeout );
+                        timeout.expired = true;
+                        timeout.next = expired;
+                        expired = timeout;
+                    }
+                    timeout = next;
+                }
+            }
+
+            for ( ; expired != null; expired = expired.next ) {
+                try {
+                    expired.task.run();
+                } catch ( Exception e ) {
+                    LOGGER.log( Level.WARNING, "Timeout task failed", e );
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a timeout to the front of its deadline's slot.
+     * Must be called while holding the wheel's lock.
+     *
+     * @param timeout Timeout to add
+     */
+    private void link( Timeout timeout ) {
+        int slot = (int) (timeout.deadline & mask);
+        timeout.slot = slot;
+        timeout.previous = null;
+        timeout.next = slots[slot];
+        if ( slots[slot] != null )
+            slots[slot].previous = timeout;
+        slots[slot] = timeout;
+        timeout.linked = true;
+    }
+
+    /**
+     * Remove a timeout from its slot.
+     * Must be called while holding the wheel's lock.
+     *
+     * @param timeout Timeout to remove
+     */
+    private void unlink( Timeout timeout ) {
+        if ( timeout.previous != null )
+            timeout.previous.next = timeout.next;
+        else
+            slots[timeout.slot] = timeout.next;
+
+        if ( timeout.next != null )
+            timeout.next.previous = timeout.previous;
+
+        timeout.previous = null;
+        timeout.next = null;
+        timeout.linked = false;
+    }
+
+
+    /**
+     * A scheduled task, pending until it expires or is cancelled.
+     */
+    public class Timeout {
+
+
+        // Private global variables
+        private Runnable task;
+        private long deadline;
+        private int slot;
+        private Timeout previous;
+        private Timeout next;
+        private boolean linked = false;
+        private volatile boolean expired = false;
+
+
+        /**
+         * Constructor for the Timeout class.
+         *
+         * @param task Task to run when the timeout expires
+         */
+        private Timeout( Runnable task ) {
+            this.task = task;
+        }
+
+        /**
+         * Cancels the task if it has not run yet.
+         *
+         * @return false if the timeout had already expired, true otherwise
+         */
+        public boolean cancel() {
+            synchronized ( TimingWheel.this ) {
+                if ( linked )
+                    unlink( this );
+                return !expired;
+            }
+        }
+
+        /**
+         * Gets whether the timeout expired and its task was run, or is about to be.
+         *
+         * @return True if the timeout expired, false otherwise
+         */
+        public boolean isExpired() {
+            return expired;
+        }
+    }
+
+}
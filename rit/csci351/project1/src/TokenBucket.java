@@ -0,0 +1,99 @@
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token bucket limiting the rate at which bytes are transferred, optionally below a parent bucket.
+ * A session's bucket caps that session, and every session's bucket shares the server's bucket as its parent,
+ * so transfers are held to both their own cap and the global cap.
+ * Waiting transfers are served in arrival order one quantum at a time,
+ * which splits a saturated parent evenly between the sessions transferring through it.
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class TokenBucket {
+
+
+    // Public constants
+    public static final int QUANTUM = 64 * 1024;
+
+    // Private constants
+    private static final long NANOS_PER_SECOND = 1000000000;
+    private static final int BURST_DIVISOR = 10;
+
+    // Private global variables
+    private TokenBucket parent;
+    private long rate;
+    private long burst;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+    private ReentrantLock lock = new ReentrantLock( true );
+
+
+    /* Public Functions */
+
+
+    /**
+     * Constructor for the TokenBucket class.
+     * The bucket starts full, holding a tenth of a second of its rate, and at least one quantum.
+     *
+     * @param rate   Maximum rate in bytes per second, 0 or less for no limit of its own
+     * @param parent Bucket which must also grant every transfer, or null for none
+     */
+    public TokenBucket( long rate, TokenBucket parent ) {
+        this.rate = Math.max( 0, rate );
+        this.parent = parent;
+        burst = Math.max( QUANTUM, this.rate / BURST_DIVISOR );
+        tokens = burst;
+    }
+
+    /**
+     * Takes tokens for bytes which were just transferred, waiting until this bucket and its parents have refilled.
+     * Transfers are charged after the fact so they may use the largest writes the channel accepts,
+     * callers keep each transfer within a quantum to bound how far ahead of its rate a session can get.
+     *
+     * @param bytes Number of bytes transferred
+     * @throws InterruptedIOException If interrupted while waiting
+     */
+    public void acquire( long bytes ) throws InterruptedIOException {
+        if ( rate > 0 )
+            take( bytes );
+
+        if ( parent != null )
+            parent.acquire( bytes );
+    }
+
+
+    /* Private Functions */
+
+
+    /**
+     * Take tokens from this bucket, sleeping off any debt while holding the fair lock
+     * so that every waiting transfer is served in turn.
+     *
+     * @param bytes Number of tokens to take
+     * @throws InterruptedIOException If interrupted while waiting
+     */
+    private void take( long bytes ) throws InterruptedIOException {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            tokens = Math.min( burst, tokens + (double) (now - lastRefill) * rate / NANOS_PER_SECOND );
+            lastRefill = now;
+            tokens -= bytes;
+
+            if ( tokens < 0 ) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep( (long) (-tokens * NANOS_PER_SECOND / rate) );
+                } catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException( "Interrupted while waiting for bandwidth" );
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
@@ -0,0 +1,244 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Access log of every command the server handles, in the spirit of xferlog.
+ * Sessions append entries to a bounded ring buffer without taking a lock, and a single background writer
+ * drains it and writes the entries to the file in batches, so no command waits on the disk.
+ * When the ring is full an entry is either dropped and counted, or its session waits for the writer to catch up.
+ * <p>
+ * Each line holds the time the command finished, the session number, the time taken in microseconds,
+ * the bytes transferred, the final reply code and the command itself:
+ * <pre>
+ *     2026-10-18T15:04:05.123Z 12 2153 1048576 226 RETR data/file042.bin
+ * </pre>
+ *
+ * @author Stephen Allan (swa9846)
+ * @version October 18, 2026
+ */
+public class TransferLog {
+
+
+    // Public constants
+    public static final String POLICY_DROP = "drop";
+    public static final String POLICY_BLOCK = "block";
+
+    // Private constants
+    private static final Logger LOGGER = Logger.getLogger( TransferLog.class.getName() );
+    private static final long IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos( 10 );
+    private static final long FULL_WAIT = TimeUnit.MICROSECONDS.toNanos( 50 );
+    private static final int BATCH_BYTES = 64 * 1024;
+    private static final long NANOS_PER_MICRO = 1000;
+
+    // Private global variables
+    private Entry[] entries;
+    private AtomicLongArray sequences;
+    private int mask;
+    private AtomicLong tail = new AtomicLong();
+    private long head = 0;
+    private boolean block;
+    private FileChannel file;
+    private Thread writer;
+    private StringBuilder batch = new StringBuilder( BATCH_BYTES );
+    private int batchEntries = 0;
+    private LongAdder written = new LongAdder();
+    private LongAdder dropped = new LongAdder();
+
+
+    /* Public Functions */
+
+
+    /**
+     * Constructor for the TransferLog class.
+     * Opens the file for appending and starts the writer thread.
+     *
+     * @param path     File to append the log to, created if it does not exist
+     * @param capacity Number of entries the ring holds, rounded up to a power of two
+     * @param block    True to make sessions wait when the ring is full, false to drop their entries
+     * @throws IOException If failed to open the file
+     */
+    public TransferLog( Path path, int capacity, boolean block ) throws IOException {
+        int size = Integer.highestOneBit( Math.max( 2, capacity ) - 1 ) << 1;
+        entries = new Entry[size];
+        sequences = new AtomicLongArray( size );
+        mask = size - 1;
+        this.block = block;
+
+        // A slot's sequence equals the position it may next be written at, until a session fills it
+        for ( int i = 0; i < size; ++i ) {
+            entries[i] = new Entry();
+            sequences.set( i, i );
+        }
+
+        file = FileChannel.open( path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND );
+
+        writer = new Thread( this::drain, "TransferLog" );
+        writer.setDaemon( true );
+        writer.start();
+    }
+
+    /**
+     * Appends an entry to the log, to be written by the background writer.
+     * Any number of sessions may record at once.
+     *
+     * @param session Number of the session which sent the command
+     * @param command Command as received from the client
+     * @param bytes   Number of bytes the command transferred
+     * @param nanos   Time taken to handle the command in nanoseconds
+     * @param result  Code of the final reply to the command
+     * @return True if the entry was queued, false if it was dropped because the ring was full
+     */
+    public boolean record( long session, String command, long bytes, long nanos, int result ) {
+        long position = tail.get();
+        while ( true ) {
+            int slot = (int) position & mask;
+            long difference = sequences.get( slot ) - position;
+
+            if ( difference == 0 ) {
+                // The slot is free at this position, claim it before filling it
+                if ( tail.compareAndSet( position, position + 1 ) ) {
+                    Entry entry = entries[slot];
+                    entry.time = System.currentTimeMillis();
+                    entry.session = session;
+                    entry.command = command;
+                    entry.bytes = bytes;
+                    entry.nanos = nanos;
+                    entry.result = result;
+
+                    // Publish the entry to the writer
+                    sequences.set( slot, position + 1 );
+                    return true;
+                }
+                position = tail.get();
+            }
+            else if ( difference < 0 ) {
+                // The writer has not yet taken the entry a lap behind, so the ring is full
+                if ( !block ) {
+                    dropped.increment();
+                    return false;
+                }
+
+                LockSupport.unpark( writer );
+                LockSupport.parkNanos( FULL_WAIT );
+                position = tail.get();
+            }
+            else
+                position = tail.get();
+        }
+    }
+
+    /**
+     * Gets the number of entries written to the file.
+     *
+     * @return Written entries
+     */
+    public long getWritten() {
+        return written.sum();
+    }
+
+    /**
+     * Gets the number of entries dropped because the ring was full or the file could not be written.
+     *
+     * @return Dropped entries
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+
+    /* Private Functions */
+
+
+    /**
+     * Take entries from the ring for as long as the server runs, writing them out whenever the ring runs dry
+     * or a batch is full. The writer sleeps while there is nothing to write.
+     */
+    private void drain() {
+        while ( true ) {
+            int slot = (int) head & mask;
+            if ( sequences.get( slot ) != head + 1 ) {
+                flush();
+                LockSupport.parkNanos( IDLE_WAIT );
+                continue;
+            }
+
+            format( entries[slot] );
+            entries[slot].command = null;
+
+            // Hand the slot back for the position one lap ahead
+            sequences.set( slot, head + entries.length );
+            ++head;
+
+            if ( batch.length() >= BATCH_BYTES )
+                flush();
+        }
+    }
+
+    /**
+     * Append an entry's line to the batch.
+     *
+     * @param entry Entry to format
+     */
+    private void format( Entry entry ) {
+        DateTimeFormatter.ISO_INSTANT.formatTo( Instant.ofEpochMilli( entry.time ), batch );
+        batch.append( ' ' ).append( entry.session )
+                .append( ' ' ).append( entry.nanos / NANOS_PER_MICRO )
+                .append( ' ' ).append( entry.bytes )
+                .append( ' ' ).append( entry.result )
+                .append( ' ' ).append( entry.command )
+                .append( '\n' );
+        ++batchEntries;
+    }
+
+    /**
+     * Write the batch to the file and start a new one.
+     * Entries of a batch which cannot be written are counted as dropped.
+     */
+    private void flush() {
+        if ( batchEntries == 0 )
+            return;
+
+        try {
+            ByteBuffer bytes = ByteBuffer.wrap( batch.toString().getBytes( StandardCharsets.UTF_8 ) );
+            while ( bytes.hasRemaining() )
+                file.write( bytes );
+            written.add( batchEntries );
+        } catch ( IOException e ) {
+            dropped.add( batchEntries );
+            LOGGER.log( Level.WARNING, "Failed to write the transfer log", e );
+        }
+
+        batch.setLength( 0 );
+        batchEntries = 0;
+    }
+
+
+    /**
+     * A slot of the ring, reused for every entry written to it.
+     */
+    private static class Entry {
+
+
+        // Private global variables
+        private long time;
+        private long session;
+        private String command;
+        private long bytes;
+        private long nanos;
+        private int result;
+    }
+
+}